@@ -0,0 +1,112 @@
+package com.binaryworkspace.rcp.wwj.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD surface kernels on the incubating Vector API, using the preferred
+ * vector size of the platform (e.g. 8 floats with AVX2, 16 with AVX-512).
+ * <p>
+ * This class is part of the multi-release overlay of the bundle. The PDE
+ * build compiles it after the Java 8 sources (see customBuildCallbacks.xml)
+ * and packages it under META-INF/versions/17, with
+ * <code>Multi-Release: true</code> in the manifest. Outside of the PDE build
+ * the equivalent is:
+ *
+ * <pre>
+ * javac --release 17 --add-modules jdk.incubator.vector -cp bin -d bin/META-INF/versions/17 src-jdk17/com/binaryworkspace/rcp/wwj/util/VectorSurfaceKernels.java
+ * </pre>
+ *
+ * To use it, launch the application on JDK 17 or later with
+ * <code>--add-modules jdk.incubator.vector</code> and
+ * <code>-Dorg.osgi.framework.bootdelegation=jdk.incubator.vector</code>. These
+ * arguments are not part of wwj.product, which must still start on Java 8.
+ * The class is not public, so the multi-release JAR adds no public API, and it
+ * is only ever loaded reflectively by SurfaceKernels.getInstance(), which
+ * falls back to the scalar kernels if it does not load or does not match them.
+ * <p>
+ * Multi-release bundles are only supported by OSGi R7 frameworks, i.e.
+ * Equinox 3.13 (Eclipse 4.8) or later. The Equinox 3.10 of the Eclipse 4.5.1
+ * target platform never loads classes from META-INF/versions, so there
+ * SurfaceKernels.getInstance() always falls back to the scalar kernels, even
+ * on JDK 17.
+ * <p>
+ * Each kernel processes whole vectors and leaves the remaining tail to the
+ * scalar implementation, with the same arithmetic per lane. The color lookup
+ * vectorizes the table index and the alpha replacement around a scalar table
+ * read: on JDK 17 a table gather through the Vector API is several times
+ * slower than the scalar loop.
+ *
+ * @author Chris Ludka
+ *
+ */
+final class VectorSurfaceKernels extends SurfaceKernels {
+
+	private static final VectorSpecies<Float> FLOAT_SPECIES = FloatVector.SPECIES_PREFERRED;
+
+	/* Ints with as many lanes as FLOAT_SPECIES, the target of float to int conversion */
+	private static final VectorSpecies<Integer> INT_SPECIES = IntVector.SPECIES_PREFERRED;
+
+	private static final VectorSpecies<Double> DOUBLE_SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/* Floats with as many lanes as DOUBLE_SPECIES, the target of double to float conversion */
+	private static final VectorSpecies<Float> HALF_FLOAT_SPECIES = VectorSpecies.of(float.class, VectorShape.forBitSize(DOUBLE_SPECIES.vectorBitSize() / 2));
+
+	VectorSurfaceKernels() {
+		if (HALF_FLOAT_SPECIES.length() != DOUBLE_SPECIES.length() || INT_SPECIES.length() != FLOAT_SPECIES.length()) {
+			throw new UnsupportedOperationException("Unsupported vector shapes");
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "Vector (" + FLOAT_SPECIES.vectorBitSize() + " bit)";
+	}
+
+	@Override
+	public void combine(double[] columnSines, int columnOffset, double rowSine, float[] rawValues, int offset, int count) {
+		int lanes = DOUBLE_SPECIES.length();
+		int vectorCount = count - count % lanes;
+		for (int index = 0; index < vectorCount; index += lanes) {
+			DoubleVector raw = DoubleVector.fromArray(DOUBLE_SPECIES, columnSines, columnOffset + index).mul(0.5).mul(rowSine).add(0.5);
+			((FloatVector) raw.convertShape(VectorOperators.D2F, HALF_FLOAT_SPECIES, 0)).intoArray(rawValues, offset + index);
+		}
+		super.combine(columnSines, columnOffset + vectorCount, rowSine, rawValues, offset + vectorCount, count - vectorCount);
+	}
+
+	@Override
+	public void shiftAndWrap(float[] rawValues, int sourceOffset, float shift, float[] magnitudes, int targetOffset, int count) {
+		// For the non-negative values of the field, x % 1 == x - (int) x exactly
+		int lanes = FLOAT_SPECIES.length();
+		int vectorCount = count - count % lanes;
+		for (int index = 0; index < vectorCount; index += lanes) {
+			FloatVector shifted = FloatVector.fromArray(FLOAT_SPECIES, rawValues, sourceOffset + index).add(shift);
+			FloatVector whole = (FloatVector) shifted.convert(VectorOperators.F2I, 0).convert(VectorOperators.I2F, 0);
+			shifted.sub(whole).intoArray(magnitudes, targetOffset + index);
+		}
+		super.shiftAndWrap(rawValues, sourceOffset + vectorCount, shift, magnitudes, targetOffset + vectorCount, count - vectorCount);
+	}
+
+	@Override
+	public void lookupArgb(float[] percentages, int sourceOffset, int[] table, float scale, int alphaBits, int[] argb, int targetOffset, int count) {
+		// Bounding leaves NaN as is, which converts to index 0 like the scalar cast
+		int lanes = FLOAT_SPECIES.length();
+		int vectorCount = count - count % lanes;
+		int[] tableIndices = new int[lanes];
+		for (int index = 0; index < vectorCount; index += lanes) {
+			FloatVector bounded = FloatVector.fromArray(FLOAT_SPECIES, percentages, sourceOffset + index);
+			bounded = bounded.blend(0.0f, bounded.compare(VectorOperators.LT, 0.0f)).blend(1.0f, bounded.compare(VectorOperators.GT, 1.0f));
+			((IntVector) bounded.mul(scale).add(0.5f).convert(VectorOperators.F2I, 0)).intoArray(tableIndices, 0);
+			int target = targetOffset + index;
+			for (int lane = 0; lane < lanes; lane++) {
+				argb[target + lane] = table[tableIndices[lane]];
+			}
+			IntVector.fromArray(INT_SPECIES, argb, target).and(0x00FFFFFF).or(alphaBits).intoArray(argb, target);
+		}
+		super.lookupArgb(percentages, sourceOffset + vectorCount, table, scale, alphaBits, argb, targetOffset + vectorCount, count - vectorCount);
+	}
+}
@@ -0,0 +1,30 @@
+package com.binaryworkspace.rcp.wwj.enums;
+
+/**
+ * An enumeration for the kinds of data a surface model can produce for a
+ * frame.
+ * 
+ * @author Chris Ludka
+ * 
+ */
+public enum SurfaceFrameType {
+	/**
+	 * Normalized magnitudes on the interval [0,1].
+	 */
+	MAGNITUDE, //
+
+	/**
+	 * Magnitudes quantized to 8 or 16 bits per cell.
+	 */
+	QUANTIZED_MAGNITUDE, //
+
+	/**
+	 * Colors derived from the magnitudes.
+	 */
+	COLOR, //
+
+	/**
+	 * Images derived from the colors.
+	 */
+	IMAGE; //
+}
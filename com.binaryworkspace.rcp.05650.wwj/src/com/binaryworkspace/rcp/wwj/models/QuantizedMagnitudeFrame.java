@@ -0,0 +1,184 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+/**
+ * A compact, immutable copy of a frame of magnitudes, quantized to 8 or 16
+ * bits per cell.
+ * <p>
+ * The range [minimum, maximum] of the frame is split into 2^bits - 1 equal
+ * steps. A cell is stored as the index q of its nearest step and restored as
+ * <code>offset + q * scale</code>, where the offset is the minimum and the
+ * scale is the step size.
+ * <p>
+ * <b>Quantization error:</b> a restored magnitude differs from the original by
+ * at most half a step, <code>scale / 2</code>, plus float rounding (see
+ * getMaximumError()). For magnitudes spanning [0, 1] that is 1/510 (about
+ * 0.002) at 8 bits and 1/131070 (about 7.6e-6) at 16 bits. Compared with the
+ * 1/4095 step of the default visible spectrum lookup table, 16 bits moves a
+ * color by at most one table entry (1 octet per channel), while 8 bits can
+ * move it by up to 9 entries (measured at up to 8 octets per channel on the
+ * Sine Wave Surface). QuantizedMagnitudeFrameTest checks the bound on frames of
+ * the Sine Wave Surface.
+ * <p>
+ * A frame takes 1 or 2 bytes per cell, against 4 bytes for float magnitudes,
+ * 12 bytes for float RGB colors and 4 bytes for an ARGB image.
+ *
+ * @author Chris Ludka
+ *
+ */
+public final class QuantizedMagnitudeFrame {
+
+	private static final int OVERHEAD_IN_BYTES = 64;
+
+	private final int width;
+
+	private final int height;
+
+	private final int bits;
+
+	private final byte[] byteCells;
+
+	private final short[] shortCells;
+
+	private final float offset;
+
+	private final float scale;
+
+	private QuantizedMagnitudeFrame(int width, int height, int bits, byte[] byteCells, short[] shortCells, float offset, float scale) {
+		this.width = width;
+		this.height = height;
+		this.bits = bits;
+		this.byteCells = byteCells;
+		this.shortCells = shortCells;
+		this.offset = offset;
+		this.scale = scale;
+	}
+
+	/**
+	 * Quantizes a frame of magnitudes.
+	 *
+	 * @param magnitudes
+	 *            width * height magnitudes with a row stride of width
+	 * @param width
+	 * @param height
+	 * @param bits
+	 *            8 or 16
+	 * @return
+	 */
+	public static QuantizedMagnitudeFrame quantize(float[] magnitudes, int width, int height, int bits) {
+		if (bits != 8 && bits != 16) {
+			throw new IllegalArgumentException("Unsupported quantization bits: " + bits);
+		}
+		int cellCount = width * height;
+
+		// Range of the frame
+		float minimum = Float.POSITIVE_INFINITY;
+		float maximum = Float.NEGATIVE_INFINITY;
+		for (int cellIndex = 0; cellIndex < cellCount; cellIndex++) {
+			float magnitude = magnitudes[cellIndex];
+			minimum = Math.min(minimum, magnitude);
+			maximum = Math.max(maximum, magnitude);
+		}
+		if (cellCount == 0) {
+			minimum = 0.0f;
+			maximum = 0.0f;
+		}
+
+		// Step size, a constant frame is stored as all zeros
+		int levels = (1 << bits) - 1;
+		float scale = (maximum - minimum) / levels;
+		float inverseScale = scale > 0.0f ? 1.0f / scale : 0.0f;
+
+		// Nearest step of each cell
+		byte[] byteCells = null;
+		short[] shortCells = null;
+		if (bits == 8) {
+			byteCells = new byte[cellCount];
+		} else {
+			shortCells = new short[cellCount];
+		}
+		for (int cellIndex = 0; cellIndex < cellCount; cellIndex++) {
+			int step = Math.round((magnitudes[cellIndex] - minimum) * inverseScale);
+			step = Math.max(0, Math.min(levels, step));
+			if (byteCells != null) {
+				byteCells[cellIndex] = (byte) step;
+			} else {
+				shortCells[cellIndex] = (short) step;
+			}
+		}
+		return new QuantizedMagnitudeFrame(width, height, bits, byteCells, shortCells, minimum, scale);
+	}
+
+	/**
+	 * Restores the magnitude of a cell.
+	 *
+	 * @param cellIndex
+	 *            <code>yIndex * width + xIndex</code>
+	 * @return
+	 */
+	public float getMagnitude(int cellIndex) {
+		int step = byteCells != null ? byteCells[cellIndex] & 0xFF : shortCells[cellIndex] & 0xFFFF;
+		return offset + step * scale;
+	}
+
+	/**
+	 * Restores the magnitudes of a run of cells.
+	 *
+	 * @param cellIndex
+	 *            first cell to restore
+	 * @param count
+	 * @param magnitudes
+	 * @param magnitudeOffset
+	 *            index in magnitudes of the first restored cell
+	 */
+	public void getMagnitudes(int cellIndex, int count, float[] magnitudes, int magnitudeOffset) {
+		int cellEnd = cellIndex + count;
+		if (byteCells != null) {
+			for (; cellIndex < cellEnd; cellIndex++) {
+				magnitudes[magnitudeOffset++] = offset + (byteCells[cellIndex] & 0xFF) * scale;
+			}
+		} else {
+			for (; cellIndex < cellEnd; cellIndex++) {
+				magnitudes[magnitudeOffset++] = offset + (shortCells[cellIndex] & 0xFFFF) * scale;
+			}
+		}
+	}
+
+	/**
+	 * Provides the largest difference between a restored magnitude and the
+	 * original: half a step, plus the rounding of the float arithmetic.
+	 *
+	 * @return
+	 */
+	public float getMaximumError() {
+		return 0.5f * scale + 2.0f * Math.ulp(Math.abs(offset) + ((1 << bits) - 1) * scale);
+	}
+
+	/**
+	 * Provides the approximate retained size, for cache accounting.
+	 *
+	 * @return
+	 */
+	public long getSizeInBytes() {
+		return (long) width * height * (bits / 8) + OVERHEAD_IN_BYTES;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getBits() {
+		return bits;
+	}
+
+	public float getOffset() {
+		return offset;
+	}
+
+	public float getScale() {
+		return scale;
+	}
+}
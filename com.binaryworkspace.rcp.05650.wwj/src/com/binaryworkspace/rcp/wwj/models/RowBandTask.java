@@ -0,0 +1,72 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Splits the rows of a frame into bands that are computed on a fork/join pool.
+ * Every band writes to a disjoint set of rows in the shared output arrays, so
+ * no synchronization is required inside a kernel.
+ *
+ * @author Chris Ludka
+ *
+ */
+class RowBandTask extends RecursiveAction {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Computes the rows [rowStart, rowEnd) of a frame.
+	 */
+	interface Kernel {
+		void computeRows(int rowStart, int rowEnd);
+	}
+
+	/**
+	 * Number of bands handed to each worker, so uneven bands balance out.
+	 */
+	private static final int BANDS_PER_WORKER = 4;
+
+	private final Kernel kernel;
+
+	private final int rowStart;
+
+	private final int rowEnd;
+
+	private final int bandSize;
+
+	private RowBandTask(Kernel kernel, int rowStart, int rowEnd, int bandSize) {
+		this.kernel = kernel;
+		this.rowStart = rowStart;
+		this.rowEnd = rowEnd;
+		this.bandSize = bandSize;
+	}
+
+	@Override
+	protected void compute() {
+		if (rowEnd - rowStart <= bandSize) {
+			kernel.computeRows(rowStart, rowEnd);
+			return;
+		}
+		int rowMiddle = (rowStart + rowEnd) >>> 1;
+		invokeAll(new RowBandTask(kernel, rowStart, rowMiddle, bandSize), new RowBandTask(kernel, rowMiddle, rowEnd, bandSize));
+	}
+
+	/**
+	 * Runs the kernel over the rows [0, rows). The kernel runs on the calling
+	 * thread when no pool is provided.
+	 *
+	 * @param pool
+	 *            the pool to run the bands on, may be null
+	 * @param kernel
+	 * @param rows
+	 */
+	static void run(ForkJoinPool pool, Kernel kernel, int rows) {
+		if (pool == null || rows < 2) {
+			kernel.computeRows(0, rows);
+			return;
+		}
+		int bandSize = Math.max(1, rows / (pool.getParallelism() * BANDS_PER_WORKER));
+		pool.invoke(new RowBandTask(kernel, 0, rows, bandSize));
+	}
+}
@@ -0,0 +1,133 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.util.concurrent.ForkJoinPool;
+
+import com.binaryworkspace.rcp.wwj.util.SurfaceKernels;
+
+/**
+ * The base field of the Sine Wave Surface for one grid geometry.
+ * <p>
+ * The raw surface value of a cell is <code>0.5 * sin(x) * sin(y) + 0.5</code>,
+ * where the x term only depends on the column and the y term only depends on
+ * the row. The basis evaluates the column and row sines once (width + height
+ * trigonometric calls instead of width * height) and combines them into the
+ * base field of raw values. The base field is built on first use, so tiles of
+ * very large fields can be evaluated from the sines alone (see
+ * SurfaceKernels.combine()).
+ * <p>
+ * Every frame of the surface is the base field shifted by
+ * <code>frame / (frames - 1)</code> and wrapped modulo 1, so any frame can be
+ * derived from the base field with a single add-and-wrap pass (see
+ * SurfaceKernels.shiftAndWrap()).
+ * <p>
+ * The x and y positions are accumulated in float exactly as a cell-by-cell
+ * evaluation would, so frames derived from the basis are bit-identical to
+ * frames built by evaluating every cell. Instances may be shared between
+ * threads.
+ *
+ * @author Chris Ludka
+ *
+ */
+final class SineWaveBasis {
+
+	private final int width;
+
+	private final int height;
+
+	private final float gridIncrement;
+
+	private final double[] columnSines;
+
+	private final double[] rowSines;
+
+	private float[] baseField;
+
+	/**
+	 * Builds the basis. The base field is computed in row bands once it is
+	 * first requested.
+	 *
+	 * @param width
+	 * @param height
+	 * @param gridIncrement
+	 */
+	SineWaveBasis(int width, int height, float gridIncrement) {
+		this.width = width;
+		this.height = height;
+		this.gridIncrement = gridIncrement;
+
+		// Column terms, going from left-to-right
+		double xScalar = width / (2.0 * Math.PI);
+		columnSines = new double[width];
+		float x = -0.5f * width;
+		for (int xIndex = 0; xIndex < width; xIndex++) {
+			columnSines[xIndex] = Math.sin(x / (xScalar));
+			x = x + gridIncrement;
+		}
+
+		// Row terms, going from the bottom
+		double yScalar = height / (2.0 * Math.PI);
+		rowSines = new double[height];
+		float y = -0.5f * height;
+		for (int yIndex = 0; yIndex < height; yIndex++) {
+			rowSines[yIndex] = Math.sin(y / (yScalar));
+			y = y + gridIncrement;
+		}
+	}
+
+	/**
+	 * Returns true if this basis was built for the given geometry.
+	 *
+	 * @param width
+	 * @param height
+	 * @param gridIncrement
+	 * @return
+	 */
+	boolean matches(int width, int height, float gridIncrement) {
+		return this.width == width && this.height == height && Float.floatToIntBits(this.gridIncrement) == Float.floatToIntBits(gridIncrement);
+	}
+
+	/**
+	 * Provides sin(x) for each column. The array must not be modified.
+	 *
+	 * @return
+	 */
+	double[] getColumnSines() {
+		return columnSines;
+	}
+
+	/**
+	 * Provides sin(y) for each row. The array must not be modified.
+	 *
+	 * @return
+	 */
+	double[] getRowSines() {
+		return rowSines;
+	}
+
+	/**
+	 * Provides the raw values of the unshifted field, with a row stride of
+	 * width, computing them on first use. The array must not be modified.
+	 *
+	 * @param pool
+	 *            the pool to compute the base field on, may be null
+	 * @return
+	 */
+	synchronized float[] getBaseField(ForkJoinPool pool) {
+		if (baseField == null) {
+			// Going from left-to-right in rows from the bottom
+			final float[] field = new float[width * height];
+			final SurfaceKernels kernels = SurfaceKernels.getInstance();
+			RowBandTask.run(pool, new RowBandTask.Kernel() {
+
+				@Override
+				public void computeRows(int rowStart, int rowEnd) {
+					for (int yIndex = rowStart; yIndex < rowEnd; yIndex++) {
+						kernels.combine(columnSines, 0, rowSines[yIndex], field, yIndex * width, width);
+					}
+				}
+			}, height);
+			baseField = field;
+		}
+		return baseField;
+	}
+}
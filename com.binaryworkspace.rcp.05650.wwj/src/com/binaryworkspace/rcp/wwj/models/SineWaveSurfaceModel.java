@@ -2,16 +2,31 @@ package com.binaryworkspace.rcp.wwj.models;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
+import com.binaryworkspace.rcp.wwj.enums.SurfaceFrameType;
 import com.binaryworkspace.rcp.wwj.resources.AwtColorScheme;
+import com.binaryworkspace.rcp.wwj.resources.VisibleSpectrumLut;
+import com.binaryworkspace.rcp.wwj.util.ColorUtils;
+import com.binaryworkspace.rcp.wwj.util.SurfaceKernels;
 
 /**
  * Provides an example model of a Sine Wave Surface that can be animated by
  * iterating through a series of given frame steps.
+ * <p>
+ * Whole frames are derived from a retained base field (see
+ * getMagnitudeFrame()); tiles (see SurfaceModel) are evaluated from the column
+ * and row terms alone, so tiles of very large fields do not require the base
+ * field to be built.
  * 
  * @author Chris Ludka
  * 
@@ -20,15 +35,114 @@ import com.binaryworkspace.rcp.wwj.resources.AwtColorScheme;
  *      "https://reference.wolfram.com/language/ref/ContourShading.html"> https:
  *      //reference.wolfram.com/language/ref/ContourShading.html</a>
  */
-public class SineWaveSurfaceModel {
+public class SineWaveSurfaceModel implements SurfaceModel {
 
-	private boolean isCacheOn = false;
+	/**
+	 * Default cache capacity of 256 MB.
+	 */
+	public static final long DEFAULT_CACHE_CAPACITY_IN_BYTES = 256L * 1024L * 1024L;
+
+	/**
+	 * Approximate per-array overhead used when estimating the retained size of
+	 * cached rows.
+	 */
+	private static final int ARRAY_OVERHEAD_IN_BYTES = 16;
+
+	/**
+	 * Number of cells treated as one "row" when mapping a flat frame whose
+	 * width is not known.
+	 */
+	private static final int COLOR_BAND_SIZE = 4096;
+
+	/**
+	 * Prefix of the disk cache file names of this model.
+	 */
+	private static final String DISK_CACHE_NAMESPACE = "SineWave";
+
+	/**
+	 * Number of tile geometries (e.g. the levels of a tiled layer) whose
+	 * column and row terms are retained.
+	 */
+	private static final int TILE_BASIS_COUNT = 8;
+
+	/**
+	 * Set on the UI thread and read by the frame computations, the magnitude
+	 * stream and the tile generation threads.
+	 */
+	private volatile boolean isCacheOn = false;
+
+	/**
+	 * Bits per cell of the quantized magnitudes held by the cache, or 0 to
+	 * cache full rows, colors and images.
+	 */
+	private int cacheQuantizationBits = 0;
+
+	/**
+	 * Frames from one cached keyframe image to the next, or 0 to cache whole
+	 * images.
+	 */
+	private int cacheKeyframeInterval = 0;
+
+	private final SurfaceFrameCache cache = new SurfaceFrameCache(DEFAULT_CACHE_CAPACITY_IN_BYTES);
+
+	/**
+	 * Optional second cache tier for images and image tiles, see
+	 * setDiskCache().
+	 */
+	private SurfaceFrameDiskCache diskCache;
 
-	private Map<Integer, List<float[]>> magnitudeCacheMap = new LinkedHashMap<Integer, List<float[]>>();
+	/**
+	 * Number of threads used to generate a frame. A value of 1 generates the
+	 * frame on the calling thread.
+	 */
+	private int parallelism = 1;
 
-	private Map<Integer, List<float[]>> colorCacheMap = new LinkedHashMap<Integer, List<float[]>>();
+	private ForkJoinPool pool;
 
-	private Map<Integer, BufferedImage> imageCacheMap = new LinkedHashMap<Integer, BufferedImage>();
+	/**
+	 * Number of frame computations running on each pool, so a pool replaced by
+	 * setParallelism() is only shut down once its last computation is done.
+	 */
+	private final Map<ForkJoinPool, Integer> poolLeaseCounts = new IdentityHashMap<ForkJoinPool, Integer>();
+
+	/**
+	 * Base field of the most recently used grid geometry, from which every
+	 * frame that shares the geometry is derived.
+	 */
+	private SineWaveBasis basis;
+
+	/**
+	 * Recently used geometries of tiles, most recent first. Tiles are
+	 * evaluated from the column and row terms, so these never build a base
+	 * field.
+	 */
+	private final LinkedList<SineWaveBasis> tileBasisList = new LinkedList<SineWaveBasis>();
+
+	/**
+	 * Lookup table used to map magnitudes to colors.
+	 */
+	private VisibleSpectrumLut colorLut = AwtColorScheme.getVisibleSpectrumLut();
+
+	/**
+	 * Creates a model with the cache turned off.
+	 */
+	public SineWaveSurfaceModel() {
+		// Spill images evicted from the cache to the disk cache
+		cache.setEvictionListener(new SurfaceFrameCache.EvictionListener() {
+
+			@Override
+			public void entryEvicted(SurfaceFrameKey key, Object value) {
+				SurfaceFrameDiskCache diskCache = getDiskCache();
+				if (diskCache != null && value instanceof BufferedImage) {
+					int[] pixels = ((DataBufferInt) ((BufferedImage) value).getRaster().getDataBuffer()).getData();
+					diskCache.write(getImageDiskCacheNamespace(), key, pixels);
+				} else if (diskCache != null && value instanceof int[]) {
+					// A keyframe image, see setCacheKeyframeInterval()
+					diskCache.write(getImageDiskCacheNamespace(), key, (int[]) value);
+				}
+			}
+		});
+	}
 
 	/**
 	 * For a given frame, provides a List of float[] containing the magnitudes
@@ -50,57 +164,137 @@ public class SineWaveSurfaceModel {
 	 * @return
 	 */
 	public List<float[]> getMagnitudeFloatArrayList(int width, int height, float gridIncrement, int frames, int frame) {
-		// Check cache
-		if (isCacheOn) {
-			if (magnitudeCacheMap.containsKey(frame)) {
-				return magnitudeCacheMap.get(frame);
+		// Restore rows from the quantized cache
+		if (isQuantizedCacheOn()) {
+			QuantizedMagnitudeFrame quantizedFrame = getQuantizedMagnitudeFrame(width, height, gridIncrement, frames, frame);
+			List<float[]> magnitudeFloatArrayList = new ArrayList<float[]>(height);
+			for (int yIndex = 0; yIndex < height; yIndex++) {
+				float[] rowCellArray = new float[width];
+				quantizedFrame.getMagnitudes(yIndex * width, width, rowCellArray, 0);
+				magnitudeFloatArrayList.add(rowCellArray);
 			}
+			return magnitudeFloatArrayList;
 		}
 
-		// Init variables
-		float y = -0.5f * height;
-		double xScalar = width / (2.0 * Math.PI);
-		double yScalar = height / (2.0 * Math.PI);
-		List<float[]> magnitudeFloatArrayList = new ArrayList<float[]>();
-
-		// Shift (or animate) based on the frame
-		float shift = frame / (float) (frames - 1);
+		// Check cache, reading the cache state once for the whole call
+		boolean isCaching = isCacheOn;
+		SurfaceFrameKey key = null;
+		if (isCaching) {
+			key = new SurfaceFrameKey(SurfaceFrameType.MAGNITUDE, width, height, gridIncrement, frames, frame, 1.0f);
+			@SuppressWarnings("unchecked")
+			List<float[]> cached = (List<float[]>) cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
 
-		// Add rows from the bottom, going from left-to-right for cell addition
+		// Compute the frame and split it into rows
+		float[] magnitudes = getMagnitudeFrame(width, height, gridIncrement, frames, frame, null);
+		List<float[]> magnitudeFloatArrayList = new ArrayList<float[]>(height);
 		for (int yIndex = 0; yIndex < height; yIndex++) {
-			// y-value
-			double dy = Math.sin(y / (yScalar));
+			float[] rowCellArray = new float[width];
+			System.arraycopy(magnitudes, yIndex * width, rowCellArray, 0, width);
+			magnitudeFloatArrayList.add(rowCellArray);
+		}
 
-			// Start at the first cell in the row
-			float x = -0.5f * width;
+		// Add to cache
+		if (isCaching) {
+			cache.put(key, magnitudeFloatArrayList, (long) height * (4L * width + ARRAY_OVERHEAD_IN_BYTES));
+		}
 
-			// Add cells to the row going from left-to-right
-			float[] rowCellArray = new float[width];
-			for (int xIndex = 0; xIndex < width; xIndex++) {
-				// x-value
-				double dx = Math.sin(x / (xScalar));
+		return magnitudeFloatArrayList;
+	}
+
+	/**
+	 * For a given frame, writes the magnitudes of the Sine Wave Surface into a
+	 * single flat float[].
+	 * <p>
+	 * The magnitude values are a normalized value between [0,1].
+	 * <p>
+	 * The cell at (xIndex, yIndex) is stored at index
+	 * <code>yIndex * width + xIndex</code>, i.e. the row stride is
+	 * <code>width</code> and the rows are in the same order as the rows of
+	 * getMagnitudeFloatArrayList(). Row yIndex is drawn as row yIndex of
+	 * getBufferedImage().
+	 * <p>
+	 * The provided array is reused when it holds at least width * height
+	 * cells, otherwise a new array is allocated and returned.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param gridIncrement
+	 * @param frames
+	 * @param frame
+	 * @param magnitudes
+	 *            the array to fill, may be null
+	 * @return the filled magnitude array
+	 */
+	public float[] getMagnitudeFrame(final int width, int height, float gridIncrement, int frames, int frame, float[] magnitudes) {
+		// Ensure the buffer can hold the frame
+		int cellCount = width * height;
+		if (magnitudes == null || magnitudes.length < cellCount) {
+			magnitudes = new float[cellCount];
+		}
+
+		// Init variables
+		final float[] frameMagnitudes = magnitudes;
+		final float[] baseField = getBaseField(width, height, gridIncrement);
+
+		// Shift (or animate) based on the frame
+		final float shift = frame / (float) (frames - 1);
 
-				// Magnitude
-				float rawValue = (float) (0.5 * dx * dy + 0.5);
-				float shiftedMagnitude = rawValue + shift;
-				float magnitude = shiftedMagnitude % 1;
-				rowCellArray[xIndex] = magnitude;
+		// Derive the frame from the base field, one add-and-wrap per cell
+		final SurfaceKernels kernels = SurfaceKernels.getInstance();
+		runRowBands(new RowBandTask.Kernel() {
 
-				// Determine start position of the next cell
-				x = x + gridIncrement;
+			@Override
+			public void computeRows(int rowStart, int rowEnd) {
+				int cellStart = rowStart * width;
+				kernels.shiftAndWrap(baseField, cellStart, shift, frameMagnitudes, cellStart, rowEnd * width - cellStart);
 			}
+		}, height);
 
-			// Add row
-			magnitudeFloatArrayList.add(rowCellArray);
-			y = y + gridIncrement;
-		}
+		return magnitudes;
+	}
 
-		// Add to cache
-		if (isCacheOn) {
-			magnitudeCacheMap.put(frame, magnitudeFloatArrayList);
+	/**
+	 * Maps a flat array of magnitudes, as produced by getMagnitudeFrame(), to
+	 * packed ARGB colors (see {@link Color#getRGB()}) sampled from the visible
+	 * spectrum through the color lookup table (see setColorLut()). The colors
+	 * are fully opaque and use the same cell order and row stride as the
+	 * magnitudes.
+	 * <p>
+	 * The provided array is reused when it holds at least cellCount colors,
+	 * otherwise a new array is allocated and returned.
+	 * 
+	 * @param magnitudes
+	 * @param cellCount
+	 *            number of cells to map, normally width * height
+	 * @param colors
+	 *            the array to fill, may be null
+	 * @return the filled color array
+	 */
+	public int[] getColorFrame(final float[] magnitudes, final int cellCount, int[] colors) {
+		// Ensure the buffer can hold the frame
+		if (colors == null || colors.length < cellCount) {
+			colors = new int[cellCount];
 		}
 
-		return magnitudeFloatArrayList;
+		// Determine the color of each cell, one band of cells per task
+		final int[] frameColors = colors;
+		final int bandCount = (cellCount + COLOR_BAND_SIZE - 1) / COLOR_BAND_SIZE;
+		final VisibleSpectrumLut lut = getColorLut();
+		runRowBands(new RowBandTask.Kernel() {
+
+			@Override
+			public void computeRows(int bandStart, int bandEnd) {
+				int cellStart = bandStart * COLOR_BAND_SIZE;
+				int cellEnd = Math.min(cellCount, bandEnd * COLOR_BAND_SIZE);
+				lut.getArgb(magnitudes, cellStart, frameColors, cellStart, cellEnd - cellStart);
+			}
+		}, bandCount);
+
+		return colors;
 	}
 
 	/**
@@ -119,113 +313,701 @@ public class SineWaveSurfaceModel {
 	 * @param frame
 	 * @return
 	 */
-	public List<float[]> getColorFloatArrayList(int width, int height, float gridIncrement, int frames, int frame) {
-		// Check cache
-		if (isCacheOn) {
-			if (colorCacheMap.containsKey(frame)) {
-				return colorCacheMap.get(frame);
+	public List<float[]> getColorFloatArrayList(final int width, int height, float gridIncrement, int frames, int frame) {
+		// Check cache, colors are derived on demand when quantized
+		boolean isCachingColors = isCacheOn && !isQuantizedCacheOn();
+		SurfaceFrameKey key = null;
+		if (isCachingColors) {
+			key = new SurfaceFrameKey(SurfaceFrameType.COLOR, width, height, gridIncrement, frames, frame, 1.0f);
+			@SuppressWarnings("unchecked")
+			List<float[]> cached = (List<float[]>) cache.get(key);
+			if (cached != null) {
+				return cached;
 			}
 		}
 
 		// Init variables
-		List<float[]> magnitudeFloatArrayList = getMagnitudeFloatArrayList(width, height, gridIncrement, frames, frame);
-		List<float[]> colorFloatArrayList = new ArrayList<float[]>();
+		final List<float[]> magnitudeFloatArrayList = getMagnitudeFloatArrayList(width, height, gridIncrement, frames, frame);
+		final float[][] rowColorArrays = new float[height][];
+		final VisibleSpectrumLut lut = getColorLut();
 
 		// Add rows from the bottom, going from left-to-right in the pixel draw
+		runRowBands(new RowBandTask.Kernel() {
+
+			@Override
+			public void computeRows(int rowStart, int rowEnd) {
+				int[] rowArgb = new int[width];
+				for (int yIndex = rowStart; yIndex < rowEnd; yIndex++) {
+					// Magnitude Float Array
+					float[] magnitudeFloatArray = magnitudeFloatArrayList.get(yIndex);
+
+					// Determine the colors of the row
+					lut.getArgb(magnitudeFloatArray, 0, rowArgb, 0, width);
+
+					// Start at the first pixel in the row
+					int pixelIndex = 0;
+
+					// Add pixels to the row going from left-to-right
+					float[] rowColorArray = new float[3 * width];
+					for (int xIndex = 0; xIndex < width; xIndex++) {
+						int rgb = rowArgb[xIndex];
+						rowColorArray[pixelIndex] = (float) ((rgb >> 16) & 0xFF) / 255.0f;
+						rowColorArray[pixelIndex + 1] = (float) ((rgb >> 8) & 0xFF) / 255.0f;
+						rowColorArray[pixelIndex + 2] = (float) (rgb & 0xFF) / 255.0f;
+						pixelIndex = pixelIndex + 3;
+					}
+					// Complete the row
+					rowColorArrays[yIndex] = rowColorArray;
+				}
+			}
+		}, height);
+
+		// Add the rows in order
+		List<float[]> colorFloatArrayList = new ArrayList<float[]>(height);
 		for (int yIndex = 0; yIndex < height; yIndex++) {
-			// Magnitude Float Array
-			float[] magnitudeFloatArray = magnitudeFloatArrayList.get(yIndex);
+			colorFloatArrayList.add(rowColorArrays[yIndex]);
+		}
 
-			// Start at the first pixel in the row
-			int pixelIndex = 0;
+		// Add to cache
+		if (isCachingColors) {
+			cache.put(key, colorFloatArrayList, (long) height * (12L * width + ARRAY_OVERHEAD_IN_BYTES));
+		}
 
-			// Add pixels to the row going from left-to-right
-			float[] rowColorArray = new float[3 * width];
-			for (int xIndex = 0; xIndex < width; xIndex++) {
-				// Magnitude
-				float magnitude = magnitudeFloatArray[xIndex];
+		return colorFloatArrayList;
+	}
 
-				// Determine and the color
-				Color awtColor = AwtColorScheme.getVisibleSpectrum(magnitude);
-				rowColorArray[pixelIndex] = (float) awtColor.getRed() / 255.0f;
-				rowColorArray[pixelIndex + 1] = (float) awtColor.getGreen() / 255.0f;
-				rowColorArray[pixelIndex + 2] = (float) awtColor.getBlue() / 255.0f;
-				pixelIndex = pixelIndex + 3;
+	@Override
+	public void getMagnitudeTile(SurfaceFrameKey key, final int tileX, final int tileY, final int tileWidth, int tileHeight, final float[] magnitudes, final int offset,
+			final int stride) {
+		SineWaveBasis basis = getTileBasis(key.getWidth(), key.getHeight(), key.getGridIncrement());
+		final double[] columnSines = basis.getColumnSines();
+		final double[] rowSines = basis.getRowSines();
+		final float shift = key.getFrame() / (float) (key.getFrames() - 1);
+		final SurfaceKernels kernels = SurfaceKernels.getInstance();
+		runRowBands(new RowBandTask.Kernel() {
+
+			@Override
+			public void computeRows(int rowStart, int rowEnd) {
+				for (int row = rowStart; row < rowEnd; row++) {
+					int index = offset + row * stride;
+					kernels.combine(columnSines, tileX, rowSines[tileY + row], magnitudes, index, tileWidth);
+					kernels.shiftAndWrap(magnitudes, index, shift, magnitudes, index, tileWidth);
+				}
 			}
-			// Complete and add the row
-			colorFloatArrayList.add(rowColorArray);
-		}
+		}, tileHeight);
+	}
 
-		// Add to cache
-		if (isCacheOn) {
-			colorCacheMap.put(frame, colorFloatArrayList);
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * While the cache is on (see setIsCacheOn()), tiles are replayed from the
+	 * disk cache (see setDiskCache()) when it holds them, and spilled to it
+	 * otherwise, keyed on the frame and the position and size of the tile.
+	 */
+	@Override
+	public void getArgbTile(SurfaceFrameKey key, int tileX, int tileY, int tileWidth, int tileHeight, int[] argb, int offset, int stride) {
+		// Check disk cache
+		SurfaceFrameDiskCache diskCache = isCacheOn ? getDiskCache() : null;
+		if (diskCache == null) {
+			computeArgbTile(key, tileX, tileY, tileWidth, tileHeight, argb, offset, stride);
+			return;
+		}
+		String namespace = getImageDiskCacheNamespace() + "-" + key.getWidth() + "x" + key.getHeight() + "-tile" + tileX + "_" + tileY;
+		SurfaceFrameKey tileKey = new SurfaceFrameKey(SurfaceFrameType.IMAGE, tileWidth, tileHeight, key.getGridIncrement(), key.getFrames(), key.getFrame(), key.getAlphaWeight());
+		boolean isPacked = offset == 0 && stride == tileWidth;
+		int[] tileArgb = isPacked ? argb : new int[tileWidth * tileHeight];
+		if (!diskCache.read(namespace, tileKey, tileArgb)) {
+			computeArgbTile(key, tileX, tileY, tileWidth, tileHeight, tileArgb, 0, tileWidth);
+			diskCache.write(namespace, tileKey, tileArgb);
+		}
+		if (!isPacked) {
+			for (int row = 0; row < tileHeight; row++) {
+				System.arraycopy(tileArgb, row * tileWidth, argb, offset + row * stride, tileWidth);
+			}
 		}
+	}
 
-		return colorFloatArrayList;
+	// Evaluates the colors of a tile, see getArgbTile()
+	private void computeArgbTile(SurfaceFrameKey key, final int tileX, final int tileY, final int tileWidth, int tileHeight, final int[] argb, final int offset, final int stride) {
+		SineWaveBasis basis = getTileBasis(key.getWidth(), key.getHeight(), key.getGridIncrement());
+		final double[] columnSines = basis.getColumnSines();
+		final double[] rowSines = basis.getRowSines();
+		final float shift = key.getFrame() / (float) (key.getFrames() - 1);
+		final int alpha = ColorUtils.getDecimalToOctect(key.getAlphaWeight());
+		final VisibleSpectrumLut lut = getColorLut();
+		final SurfaceKernels kernels = SurfaceKernels.getInstance();
+		runRowBands(new RowBandTask.Kernel() {
+
+			@Override
+			public void computeRows(int rowStart, int rowEnd) {
+				float[] rowMagnitudes = new float[tileWidth];
+				for (int row = rowStart; row < rowEnd; row++) {
+					kernels.combine(columnSines, tileX, rowSines[tileY + row], rowMagnitudes, 0, tileWidth);
+					kernels.shiftAndWrap(rowMagnitudes, 0, shift, rowMagnitudes, 0, tileWidth);
+					lut.getArgbWithAlpha(rowMagnitudes, 0, argb, offset + row * stride, tileWidth, alpha);
+				}
+			}
+		}, tileHeight);
+	}
+
+	@Override
+	public BufferedImage getBufferedImage(SurfaceFrameKey key) {
+		return getBufferedImage(key.getWidth(), key.getHeight(), key.getGridIncrement(), key.getFrames(), key.getFrame(), key.getAlphaWeight());
 	}
 
 	/**
-	 * Produces an image of a given frame based on the getColorFloatArrayList()
-	 * model.
+	 * Produces an image of a given frame with the colors of
+	 * getColorFrame(), where the alpha channel of every pixel is the alpha
+	 * weight.
 	 * 
 	 * @param width
 	 * @param height
 	 * @param gridIncrement
 	 * @param frames
 	 * @param frame
+	 * @param alphaWeight
+	 *            alpha on the decimal interval [0.0f, 1.0f]
 	 * @return
 	 */
 	public BufferedImage getBufferedImage(int width, int height, float gridIncrement, int frames, int frame, float alphaWeight) {
-		// Check cache
-		if (isCacheOn) {
-			if (imageCacheMap.containsKey(frame)) {
-				return imageCacheMap.get(frame);
-			}
+		// Derive the image from the quantized cache
+		if (isQuantizedCacheOn()) {
+			return getBufferedImage(getQuantizedMagnitudeFrame(width, height, gridIncrement, frames, frame), alphaWeight);
 		}
 
-		// Model data
-		float alpha = (alphaWeight * 255.0f) / 255.0f;
-		List<float[]> floatArrayColorList = getColorFloatArrayList(width, height, gridIncrement, frames, frame);
+		// Check cache, reading the cache state once for the whole call
+		boolean isCaching = isCacheOn;
+		SurfaceFrameKey key = new SurfaceFrameKey(SurfaceFrameType.IMAGE, width, height, gridIncrement, frames, frame, alphaWeight);
+		int keyframeInterval = getCacheKeyframeInterval();
+		if (isCaching && keyframeInterval > 0) {
+			return getDeltaCachedImage(key, keyframeInterval);
+		}
+		if (isCaching) {
+			BufferedImage cached = (BufferedImage) cache.get(key);
+			if (cached != null) {
+				return cached;
+			}
+		}
 
-		// Build image
+		// Check disk cache, which holds the images evicted from the cache,
+		// otherwise build image
 		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		for (int yIndex = 0; yIndex < height; yIndex++) {
-			// Row data
-			float[] rowColorArray = floatArrayColorList.get(yIndex);
+		SurfaceFrameDiskCache diskCache = isCaching ? getDiskCache() : null;
+		if (diskCache == null || !diskCache.read(getImageDiskCacheNamespace(), key, ((DataBufferInt) image.getRaster().getDataBuffer()).getData())) {
+			fillBufferedImage(image, gridIncrement, frames, frame, alphaWeight);
+		}
+
+		// Add to cache
+		if (isCaching) {
+			cache.put(key, image, 4L * width * height);
+		}
+
+		return image;
+	}
 
-			/*
-			 * Add pixels in the row. Be sure to use 'width' and not
-			 * rowColorArray.length() because the rowColorArray is x3 longer
-			 * than the 'width' to account for the rgb pixel data (e.g.
-			 * [{r1,g1,b1},{r2,g2,b3},...]).
-			 */
-			int pixelIndex = 0;
-			for (int xIndex = 0; xIndex < width; xIndex++) {
-				Color color = new Color(rowColorArray[pixelIndex], rowColorArray[pixelIndex + 1], rowColorArray[pixelIndex + 2], alpha);
-				image.setRGB(xIndex, yIndex, color.getRGB());
-				pixelIndex = pixelIndex + 3;
+	/**
+	 * Fills a caller-supplied image, in place, with a given frame. The frame
+	 * width and height are those of the image. The pixels are written straight
+	 * into the int[] backing the raster, so the image must be of type
+	 * TYPE_INT_ARGB or TYPE_INT_ARGB_PRE.
+	 * <p>
+	 * Note that World Wind caches textures by image source, so an image handed
+	 * to a SurfaceImage should not be refilled afterwards.
+	 * 
+	 * @param image
+	 * @param gridIncrement
+	 * @param frames
+	 * @param frame
+	 * @param alphaWeight
+	 *            alpha on the decimal interval [0.0f, 1.0f]
+	 */
+	public void fillBufferedImage(BufferedImage image, float gridIncrement, int frames, int frame, float alphaWeight) {
+		// Validate the image type
+		int type = image.getType();
+		if (type != BufferedImage.TYPE_INT_ARGB && type != BufferedImage.TYPE_INT_ARGB_PRE) {
+			throw new IllegalArgumentException("Unsupported Image Type: " + type);
+		}
+
+		// Locate the pixels of the image in the backing array
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		WritableRaster raster = image.getRaster();
+		final int[] data = ((DataBufferInt) raster.getDataBuffer()).getData();
+		final int scanlineStride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+		final int origin = raster.getDataBuffer().getOffset() - raster.getSampleModelTranslateY() * scanlineStride - raster.getSampleModelTranslateX();
+
+		// Alpha is applied once per frame
+		final int alpha = ColorUtils.getDecimalToOctect(alphaWeight);
+		final boolean isPremultiplied = image.isAlphaPremultiplied();
+
+		// Model data
+		final float[] baseField = getBaseField(width, height, gridIncrement);
+		final float shift = frame / (float) (frames - 1);
+		final VisibleSpectrumLut lut = getColorLut();
+		final SurfaceKernels kernels = SurfaceKernels.getInstance();
+
+		// Write the pixels of each row
+		runRowBands(new RowBandTask.Kernel() {
+
+			@Override
+			public void computeRows(int rowStart, int rowEnd) {
+				float[] rowMagnitudes = new float[width];
+				for (int yIndex = rowStart; yIndex < rowEnd; yIndex++) {
+					kernels.shiftAndWrap(baseField, yIndex * width, shift, rowMagnitudes, 0, width);
+					int pixelIndex = origin + yIndex * scanlineStride;
+					if (!isPremultiplied) {
+						lut.getArgbWithAlpha(rowMagnitudes, 0, data, pixelIndex, width, alpha);
+						continue;
+					}
+					for (int xIndex = 0; xIndex < width; xIndex++) {
+						data[pixelIndex++] = premultiply(lut.getArgb(rowMagnitudes[xIndex]), alpha);
+					}
+				}
 			}
+		}, height);
+	}
+
+	// Builds an image from quantized magnitudes through the color lookup table
+	private BufferedImage getBufferedImage(final QuantizedMagnitudeFrame quantizedFrame, float alphaWeight) {
+		final int width = quantizedFrame.getWidth();
+		BufferedImage image = new BufferedImage(width, quantizedFrame.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		final int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		final int alphaBits = ColorUtils.getDecimalToOctect(alphaWeight) << 24;
+		final VisibleSpectrumLut lut = getColorLut();
+		runRowBands(new RowBandTask.Kernel() {
+
+			@Override
+			public void computeRows(int rowStart, int rowEnd) {
+				int cellEnd = rowEnd * width;
+				for (int cellIndex = rowStart * width; cellIndex < cellEnd; cellIndex++) {
+					data[cellIndex] = alphaBits | (lut.getArgb(quantizedFrame.getMagnitude(cellIndex)) & 0x00FFFFFF);
+				}
+			}
+		}, quantizedFrame.getHeight());
+		return image;
+	}
+
+	// Provides an image decoded from the keyframes and deltas of the cache, see
+	// setCacheKeyframeInterval(), adding the frame on a miss
+	private BufferedImage getDeltaCachedImage(SurfaceFrameKey key, int keyframeInterval) {
+		BufferedImage image = new BufferedImage(key.getWidth(), key.getHeight(), BufferedImage.TYPE_INT_ARGB);
+		int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		if (decodeCachedImage(key, pixels)) {
+			return image;
 		}
 
-		// Add to cache
-		if (isCacheOn) {
-			imageCacheMap.put(frame, image);
+		// Check disk cache, otherwise build image
+		SurfaceFrameDiskCache diskCache = getDiskCache();
+		if (diskCache == null || !diskCache.read(getImageDiskCacheNamespace(), key, pixels)) {
+			fillBufferedImage(image, key.getGridIncrement(), key.getFrames(), key.getFrame(), key.getAlphaWeight());
 		}
 
+		// Add as the delta from the previous frame, unless a keyframe is due,
+		// the previous frame is not cached or too many cells changed
+		SurfaceFrameDelta delta = null;
+		if (key.getFrame() % keyframeInterval != 0) {
+			int[] previousPixels = new int[pixels.length];
+			if (decodeCachedImage(key.withFrame(key.getFrame() - 1), previousPixels)) {
+				delta = SurfaceFrameDelta.compute(previousPixels, pixels, key.getWidth(), key.getHeight(), SurfaceFrameDelta.DEFAULT_BLOCK_SIZE, pixels.length / 2);
+			}
+		}
+		if (delta != null) {
+			cache.put(key, delta, delta.getSizeInBytes());
+		} else {
+			cache.put(key, pixels.clone(), 4L * pixels.length + ARRAY_OVERHEAD_IN_BYTES);
+		}
 		return image;
 	}
 
+	// Decodes a cached image from its keyframe and the deltas that follow it,
+	// returning false if any of them is not cached
+	private boolean decodeCachedImage(SurfaceFrameKey key, int[] pixels) {
+		List<SurfaceFrameDelta> deltaList = new ArrayList<SurfaceFrameDelta>();
+		SurfaceFrameKey frameKey = key;
+		Object value = cache.get(frameKey);
+		while (value instanceof SurfaceFrameDelta) {
+			deltaList.add((SurfaceFrameDelta) value);
+			frameKey = frameKey.withFrame(frameKey.getFrame() - 1);
+			value = cache.get(frameKey);
+		}
+		if (!(value instanceof int[])) {
+			return false;
+		}
+		System.arraycopy(value, 0, pixels, 0, pixels.length);
+		for (int index = deltaList.size() - 1; index >= 0; index--) {
+			deltaList.get(index).applyTo(pixels);
+		}
+		return true;
+	}
+
+	// Provides the quantized magnitudes of a frame from the cache, adding them
+	private QuantizedMagnitudeFrame getQuantizedMagnitudeFrame(int width, int height, float gridIncrement, int frames, int frame) {
+		SurfaceFrameKey key = new SurfaceFrameKey(SurfaceFrameType.QUANTIZED_MAGNITUDE, width, height, gridIncrement, frames, frame, 1.0f);
+		QuantizedMagnitudeFrame quantizedFrame = (QuantizedMagnitudeFrame) cache.get(key);
+		if (quantizedFrame == null) {
+			float[] magnitudes = getMagnitudeFrame(width, height, gridIncrement, frames, frame, null);
+			quantizedFrame = QuantizedMagnitudeFrame.quantize(magnitudes, width, height, getCacheQuantizationBits());
+			cache.put(key, quantizedFrame, quantizedFrame.getSizeInBytes());
+		}
+		return quantizedFrame;
+	}
+
+	// Returns true if the cache holds quantized magnitudes only
+	private boolean isQuantizedCacheOn() {
+		return isCacheOn && getCacheQuantizationBits() > 0;
+	}
+
+	// Packs an opaque color with the given alpha and premultiplies its channels
+	private static int premultiply(int rgb, int alpha) {
+		int red = (((rgb >> 16) & 0xFF) * alpha + 127) / 255;
+		int green = (((rgb >> 8) & 0xFF) * alpha + 127) / 255;
+		int blue = ((rgb & 0xFF) * alpha + 127) / 255;
+		return (alpha << 24) | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * Opens a stream of magnitude frames, as produced by getMagnitudeFrame(),
+	 * that are computed on a producer thread into recycled buffers of width *
+	 * height cells.
+	 * <p>
+	 * The last frame of the sequence (frames - 1) is identical to frame 0, so a
+	 * looping stream runs over frames [0, frames - 1) for a seamless animation,
+	 * while a stream that does not loop, e.g. for export, ends after frame
+	 * frames - 1. The parameters are validated once, here.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param gridIncrement
+	 * @param frames
+	 * @param startFrame
+	 * @param isLooping
+	 * @param bufferCount
+	 *            number of recycled buffers, at least 2
+	 * @return the stream, which must be closed once no longer used
+	 */
+	public SurfaceFrameStream<float[]> openMagnitudeStream(final int width, final int height, final float gridIncrement, final int frames, int startFrame, boolean isLooping, int bufferCount) {
+		validateSequence(width, height, gridIncrement, frames);
+		return new SurfaceFrameStream<float[]>(new SurfaceFrameStream.Source<float[]>() {
+
+			@Override
+			public float[] createBuffer() {
+				return new float[width * height];
+			}
+
+			@Override
+			public void fillBuffer(float[] buffer, int frame) {
+				getMagnitudeFrame(width, height, gridIncrement, frames, frame, buffer);
+			}
+		}, isLooping ? frames - 1 : frames, startFrame, isLooping, bufferCount);
+	}
+
 	/**
-	 * Turns the cache on. Note this can consume significant amounts of memory.
+	 * Opens a stream of images, as produced by getBufferedImage(), that are
+	 * filled on a producer thread into recycled TYPE_INT_ARGB images. See
+	 * openMagnitudeStream() for the frame sequence.
+	 * <p>
+	 * Since the images are recycled, a consumer that retains an image, such as
+	 * a World Wind SurfaceImage, must copy it or not recycle it.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param gridIncrement
+	 * @param frames
+	 * @param startFrame
+	 * @param alphaWeight
+	 *            alpha on the decimal interval [0.0f, 1.0f]
+	 * @param isLooping
+	 * @param bufferCount
+	 *            number of recycled images, at least 2
+	 * @return the stream, which must be closed once no longer used
+	 */
+	public SurfaceFrameStream<BufferedImage> openImageStream(final int width, final int height, final float gridIncrement, final int frames, int startFrame, final float alphaWeight,
+			boolean isLooping, int bufferCount) {
+		validateSequence(width, height, gridIncrement, frames);
+		return new SurfaceFrameStream<BufferedImage>(new SurfaceFrameStream.Source<BufferedImage>() {
+
+			@Override
+			public BufferedImage createBuffer() {
+				return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+			}
+
+			@Override
+			public void fillBuffer(BufferedImage buffer, int frame) {
+				fillBufferedImage(buffer, gridIncrement, frames, frame, alphaWeight);
+			}
+		}, isLooping ? frames - 1 : frames, startFrame, isLooping, bufferCount);
+	}
+
+	// Validates the parameters of a frame sequence
+	private static void validateSequence(int width, int height, float gridIncrement, int frames) {
+		if (width < 1 || height < 1) {
+			throw new IllegalArgumentException("Invalid frame size: " + width + "x" + height);
+		}
+		if (!(gridIncrement > 0.0f)) {
+			throw new IllegalArgumentException("Grid increment must be positive: " + gridIncrement);
+		}
+		if (frames < 2) {
+			throw new IllegalArgumentException("Frame count must be at least 2: " + frames);
+		}
+	}
+
+	/**
+	 * Turns the cache on. The cache is bounded by its capacity (see
+	 * setCacheCapacityInBytes()) and evicts the least-recently-used frames
+	 * once full.
 	 * 
 	 * @param isCacheOn
 	 */
 	public void setIsCacheOn(boolean isCacheOn) {
 		this.isCacheOn = isCacheOn;
 		if (!isCacheOn) {
-			// Dump the maps since the cache has been turned off
-			magnitudeCacheMap = new LinkedHashMap<Integer, List<float[]>>();
-			colorCacheMap = new LinkedHashMap<Integer, List<float[]>>();
+			// Dump the cache since it has been turned off
+			cache.clear();
 		}
 	}
+
+	/**
+	 * Sets the compact storage of the cache. With 8 or 16 bits the cache only
+	 * holds the magnitudes of each frame, quantized to that many bits per cell
+	 * (see QuantizedMagnitudeFrame for the error); rows, colors and images are
+	 * derived from them on demand through the color lookup table, and the disk
+	 * cache is not used for images. With 0 (the default) the cache holds full
+	 * rows, colors and images. The cache is cleared since its contents depend
+	 * on the storage.
+	 * 
+	 * @param bits
+	 *            0, 8 or 16
+	 */
+	public synchronized void setCacheQuantizationBits(int bits) {
+		if (bits != 0 && bits != 8 && bits != 16) {
+			throw new IllegalArgumentException("Unsupported quantization bits: " + bits);
+		}
+		cacheQuantizationBits = bits;
+		cache.clear();
+	}
+
+	/**
+	 * Provides the bits per cell of the cached magnitudes, or 0 if the cache
+	 * holds full rows, colors and images.
+	 * 
+	 * @return
+	 */
+	public synchronized int getCacheQuantizationBits() {
+		return cacheQuantizationBits;
+	}
+
+	/**
+	 * Sets the delta encoding of the images held by the cache. With an
+	 * interval of n > 0, every n-th frame is cached as a whole image (a
+	 * keyframe) and every other frame as the SurfaceFrameDelta from the frame
+	 * before it, so a slowly varying field takes a fraction of the memory. A
+	 * frame is kept whole when more than half of its cells changed, which is
+	 * always the case for the traveling Sine Wave Surface. Images are decoded
+	 * from the nearest keyframe on every call, so the images returned are not
+	 * shared. With 0 (the default) images are cached whole. Has no effect with
+	 * a quantized cache (see setCacheQuantizationBits()). The cache is cleared
+	 * since its contents depend on the encoding.
+	 * 
+	 * @param keyframeInterval
+	 *            0, or the number of frames from one keyframe to the next
+	 */
+	public synchronized void setCacheKeyframeInterval(int keyframeInterval) {
+		if (keyframeInterval < 0) {
+			throw new IllegalArgumentException("Keyframe interval must not be negative: " + keyframeInterval);
+		}
+		cacheKeyframeInterval = keyframeInterval;
+		cache.clear();
+	}
+
+	/**
+	 * Provides the number of frames from one cached keyframe image to the
+	 * next, or 0 if images are cached whole.
+	 * 
+	 * @return
+	 */
+	public synchronized int getCacheKeyframeInterval() {
+		return cacheKeyframeInterval;
+	}
+
+	/**
+	 * Sets the maximum number of bytes the cache may hold.
+	 * 
+	 * @param capacityInBytes
+	 */
+	public void setCacheCapacityInBytes(long capacityInBytes) {
+		cache.setCapacityInBytes(capacityInBytes);
+	}
+
+	/**
+	 * Sets the disk cache that images (see getBufferedImage()) are spilled to
+	 * when evicted from the cache and image tiles (see getArgbTile()) are
+	 * spilled to when computed, and that both are replayed from. The disk cache
+	 * is only used while the cache is on (see setIsCacheOn()), and for images
+	 * only on a miss of the cache. Magnitude frames are derived from the base
+	 * field faster than they are read back, so they are never spilled. Frames
+	 * are stored per color lookup table resolution, so images of different
+	 * tables never mix.
+	 * 
+	 * @param diskCache
+	 *            the disk cache, or null to only use the in-memory cache
+	 */
+	public synchronized void setDiskCache(SurfaceFrameDiskCache diskCache) {
+		this.diskCache = diskCache;
+	}
+
+	/**
+	 * Provides the disk cache, or null if none is set.
+	 * 
+	 * @return
+	 */
+	public synchronized SurfaceFrameDiskCache getDiskCache() {
+		return diskCache;
+	}
+
+	/**
+	 * Sets the number of threads used to generate a frame. Frames are split
+	 * into row bands that are computed on a dedicated fork/join pool. The
+	 * output is identical to the sequential output for any parallelism level.
+	 * A value of 1 (the default) generates frames on the calling thread.
+	 * Frames in progress finish on the pool they started on, which is shut
+	 * down once they are done.
+	 * 
+	 * @param parallelism
+	 */
+	public synchronized void setParallelism(int parallelism) {
+		parallelism = Math.max(1, parallelism);
+		if (parallelism != this.parallelism && pool != null) {
+			if (!poolLeaseCounts.containsKey(pool)) {
+				pool.shutdown();
+			}
+			pool = null;
+		}
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Provides the number of threads used to generate a frame.
+	 * 
+	 * @return
+	 */
+	public synchronized int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets the lookup table used to map magnitudes to colors. The cache is
+	 * cleared since cached colors and images depend on the table.
+	 * 
+	 * @param colorLut
+	 */
+	public synchronized void setColorLut(VisibleSpectrumLut colorLut) {
+		this.colorLut = colorLut;
+		cache.clear();
+	}
+
+	/**
+	 * Provides the lookup table used to map magnitudes to colors.
+	 * 
+	 * @return
+	 */
+	public synchronized VisibleSpectrumLut getColorLut() {
+		return colorLut;
+	}
+
+	// Provides the disk cache namespace of images, which depend on the table
+	private synchronized String getImageDiskCacheNamespace() {
+		return DISK_CACHE_NAMESPACE + "-lut" + colorLut.getResolution();
+	}
+
+	// Provides the base field for the grid geometry, computing it once
+	private synchronized SineWaveBasis getBasis(int width, int height, float gridIncrement) {
+		if (basis == null || !basis.matches(width, height, gridIncrement)) {
+			basis = null; // release the previous field first
+			basis = new SineWaveBasis(width, height, gridIncrement);
+		}
+		return basis;
+	}
+
+	// Provides the column and row terms for a tile geometry, keeping a few
+	private synchronized SineWaveBasis getTileBasis(int width, int height, float gridIncrement) {
+		if (basis != null && basis.matches(width, height, gridIncrement)) {
+			return basis;
+		}
+		Iterator<SineWaveBasis> iterator = tileBasisList.iterator();
+		while (iterator.hasNext()) {
+			SineWaveBasis tileBasis = iterator.next();
+			if (tileBasis.matches(width, height, gridIncrement)) {
+				iterator.remove();
+				tileBasisList.addFirst(tileBasis);
+				return tileBasis;
+			}
+		}
+		SineWaveBasis tileBasis = new SineWaveBasis(width, height, gridIncrement);
+		tileBasisList.addFirst(tileBasis);
+		if (tileBasisList.size() > TILE_BASIS_COUNT) {
+			tileBasisList.removeLast();
+		}
+		return tileBasis;
+	}
+
+	// Provides the base field for the grid geometry, computed on a leased pool
+	private float[] getBaseField(int width, int height, float gridIncrement) {
+		SineWaveBasis frameBasis = getBasis(width, height, gridIncrement);
+		ForkJoinPool leasedPool = acquirePool();
+		try {
+			return frameBasis.getBaseField(leasedPool);
+		} finally {
+			releasePool(leasedPool);
+		}
+	}
+
+	// Runs the kernel in row bands on a pool that stays open until it is done
+	private void runRowBands(RowBandTask.Kernel kernel, int rows) {
+		ForkJoinPool leasedPool = acquirePool();
+		try {
+			RowBandTask.run(leasedPool, kernel, rows);
+		} finally {
+			releasePool(leasedPool);
+		}
+	}
+
+	// Provides the pool for the parallelism level, or null if sequential, and
+	// keeps it open until released
+	private synchronized ForkJoinPool acquirePool() {
+		if (parallelism > 1 && pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		if (pool != null) {
+			Integer leaseCount = poolLeaseCounts.get(pool);
+			poolLeaseCounts.put(pool, leaseCount == null ? 1 : leaseCount + 1);
+		}
+		return pool;
+	}
+
+	// Releases a pool from acquirePool(), shutting it down if it was replaced
+	// and this was its last computation
+	private synchronized void releasePool(ForkJoinPool leasedPool) {
+		if (leasedPool == null) {
+			return;
+		}
+		int leaseCount = poolLeaseCounts.get(leasedPool) - 1;
+		if (leaseCount > 0) {
+			poolLeaseCounts.put(leasedPool, leaseCount);
+			return;
+		}
+		poolLeaseCounts.remove(leasedPool);
+		if (leasedPool != pool) {
+			leasedPool.shutdown();
+		}
+	}
+
+	/**
+	 * Provides the frame cache, e.g. to read its hit, miss and eviction
+	 * counters.
+	 * 
+	 * @return
+	 */
+	public SurfaceFrameCache getCache() {
+		return cache;
+	}
 }
@@ -2,16 +2,98 @@ package com.binaryworkspace.rcp.wwj.models;
 
 import java.awt.Color;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.binaryworkspace.rcp.wwj.util.ColorUtils;
 
 /**
  * Provides an image of a solid color surface.
+ * <p>
+ * As a SurfaceModel the surface has the color of the model (see setColor()) in
+ * every cell and frame, and a constant magnitude of 0.
+ * <p>
+ * Images are filled in bulk and interned: every request for the same width,
+ * height and color returns the same shared image, so refreshing a solid
+ * overlay neither allocates nor fills an image, and World Wind keeps using the
+ * texture it already created for it. A bounded number of the most recently
+ * used images is retained, shared by all models. Interned images must not be
+ * modified.
  * 
  * @author Chris Ludka
  * 
  */
-public class SolidColorSurfaceModel {
+public class SolidColorSurfaceModel implements SurfaceModel {
+
+	/** The number of interned images retained. */
+	private static final int INTERNED_IMAGE_COUNT = 64;
+
+	/* Interned images, least recently used first, guarded by itself */
+	private static final LinkedHashMap<ImageKey, BufferedImage> imageMap = new LinkedHashMap<ImageKey, BufferedImage>(16, 0.75f, true) {
+
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<ImageKey, BufferedImage> eldest) {
+			return size() > INTERNED_IMAGE_COUNT;
+		}
+	};
+
+	/**
+	 * The size and packed ARGB color of an interned image.
+	 */
+	private static final class ImageKey {
+
+		private final int width;
+
+		private final int height;
+
+		private final int argb;
+
+		private ImageKey(int width, int height, int argb) {
+			this.width = width;
+			this.height = height;
+			this.argb = argb;
+		}
+
+		@Override
+		public int hashCode() {
+			return (31 * width + height) * 31 + argb;
+		}
+
+		@Override
+		public boolean equals(Object object) {
+			if (!(object instanceof ImageKey)) {
+				return false;
+			}
+			ImageKey other = (ImageKey) object;
+			return width == other.width && height == other.height && argb == other.argb;
+		}
+	}
+
+	private volatile Color color;
+
+	/**
+	 * Creates a white surface model.
+	 */
+	public SolidColorSurfaceModel() {
+		this(Color.WHITE);
+	}
+
 	/**
-	 * Provides an image of a solid color surface.
+	 * Creates a surface model of the given color.
+	 * 
+	 * @param color
+	 */
+	public SolidColorSurfaceModel(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * Provides an image of a solid color surface. The image is interned and
+	 * must not be modified.
 	 * 
 	 * @param width
 	 * @param height
@@ -19,13 +101,100 @@ public class SolidColorSurfaceModel {
 	 * @return
 	 */
 	public BufferedImage getBufferedImage(int width, int height, Color color) {
-		// Build image
+		return getInternedImage(width, height, color.getRGB());
+	}
+
+	/**
+	 * Provides an image of a solid color surface. The image is interned and
+	 * must not be modified.
+	 * <p>
+	 * A consumer that stretches the image over its extent, such as a
+	 * SurfaceImage, draws a solid color the same at any image size, so it can
+	 * permit a stretched image: a single pixel of the color instead of width *
+	 * height pixels.
+	 * 
+	 * @param width
+	 * @param height
+	 * @param Color
+	 * @param isStretchable
+	 *            true if the consumer stretches the image, in which case a 1 x 1
+	 *            image is returned
+	 * @return
+	 */
+	public BufferedImage getBufferedImage(int width, int height, Color color, boolean isStretchable) {
+		if (isStretchable) {
+			return getInternedImage(1, 1, color.getRGB());
+		}
+		return getInternedImage(width, height, color.getRGB());
+	}
+
+	@Override
+	public void getMagnitudeTile(SurfaceFrameKey key, int tileX, int tileY, int tileWidth, int tileHeight, float[] magnitudes, int offset, int stride) {
+		for (int row = 0; row < tileHeight; row++) {
+			int rowStart = offset + row * stride;
+			Arrays.fill(magnitudes, rowStart, rowStart + tileWidth, 0.0f);
+		}
+	}
+
+	@Override
+	public void getArgbTile(SurfaceFrameKey key, int tileX, int tileY, int tileWidth, int tileHeight, int[] argb, int offset, int stride) {
+		int rgb = getArgb(key.getAlphaWeight());
+		for (int row = 0; row < tileHeight; row++) {
+			int rowStart = offset + row * stride;
+			Arrays.fill(argb, rowStart, rowStart + tileWidth, rgb);
+		}
+	}
+
+	@Override
+	public BufferedImage getBufferedImage(SurfaceFrameKey key) {
+		return getInternedImage(key.getWidth(), key.getHeight(), getArgb(key.getAlphaWeight()));
+	}
+
+	// Provides the shared image of a size and color, filling it in bulk once
+	private static BufferedImage getInternedImage(int width, int height, int argb) {
+		ImageKey imageKey = new ImageKey(width, height, argb);
+		synchronized (imageMap) {
+			BufferedImage image = imageMap.get(imageKey);
+			if (image != null) {
+				return image;
+			}
+		}
+
+		// Fill outside the lock, a concurrent duplicate is harmless
 		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
-		for (int yIndex = 0; yIndex < height; yIndex++) {
-			for (int xIndex = 0; xIndex < width; xIndex++) {
-				image.setRGB(xIndex, yIndex, color.getRGB());
+		Arrays.fill(((DataBufferInt) image.getRaster().getDataBuffer()).getData(), argb);
+		synchronized (imageMap) {
+			BufferedImage internedImage = imageMap.get(imageKey);
+			if (internedImage != null) {
+				return internedImage;
 			}
+			imageMap.put(imageKey, image);
 		}
 		return image;
 	}
+
+	// Packs the color with its alpha scaled by the alpha weight
+	private int getArgb(float alphaWeight) {
+		Color color = this.color;
+		int alpha = ColorUtils.getDecimalToOctect(color.getAlpha() / 255.0f * alphaWeight);
+		return (alpha << 24) | (color.getRGB() & 0x00FFFFFF);
+	}
+
+	/**
+	 * Sets the color of the surface.
+	 * 
+	 * @param color
+	 */
+	public void setColor(Color color) {
+		this.color = color;
+	}
+
+	/**
+	 * Provides the color of the surface.
+	 * 
+	 * @return
+	 */
+	public Color getColor() {
+		return color;
+	}
 }
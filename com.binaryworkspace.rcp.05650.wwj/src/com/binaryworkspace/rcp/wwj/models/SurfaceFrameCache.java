@@ -0,0 +1,230 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory-bounded, least-recently-used cache of surface model frames.
+ * <p>
+ * Each entry is stored with its approximate size in bytes. When adding an
+ * entry would exceed the capacity, the least-recently-used entries are evicted
+ * until the entry fits. Entries larger than the whole capacity are not cached.
+ * <p>
+ * Hit, miss and eviction counters are kept so the effectiveness of the cache
+ * can be monitored, and evicted entries are passed to the eviction listener, if
+ * any, so they can be spilled to a slower tier. All methods are thread safe.
+ * 
+ * @author Chris Ludka
+ * 
+ */
+public class SurfaceFrameCache {
+
+	/**
+	 * Receives the entries evicted to make room for others.
+	 */
+	public interface EvictionListener {
+
+		/**
+		 * Called once an entry has been evicted, without holding the lock of
+		 * the cache. Entries removed by clear() or replaced by put() are not
+		 * passed.
+		 * 
+		 * @param key
+		 * @param value
+		 */
+		void entryEvicted(SurfaceFrameKey key, Object value);
+	}
+
+	private static class Entry {
+
+		private final SurfaceFrameKey key;
+
+		private final Object value;
+
+		private final long sizeInBytes;
+
+		private Entry(SurfaceFrameKey key, Object value, long sizeInBytes) {
+			this.key = key;
+			this.value = value;
+			this.sizeInBytes = sizeInBytes;
+		}
+	}
+
+	/*
+	 * Access ordered map, so iteration starts at the least-recently-used
+	 * entry.
+	 */
+	private final LinkedHashMap<SurfaceFrameKey, Entry> entryMap = new LinkedHashMap<SurfaceFrameKey, Entry>(16, 0.75f, true);
+
+	private long capacityInBytes;
+
+	private long sizeInBytes = 0;
+
+	private long hitCount = 0;
+
+	private long missCount = 0;
+
+	private long evictionCount = 0;
+
+	private EvictionListener evictionListener;
+
+	/**
+	 * Creates a cache that holds at most the given number of bytes.
+	 * 
+	 * @param capacityInBytes
+	 */
+	public SurfaceFrameCache(long capacityInBytes) {
+		this.capacityInBytes = Math.max(0, capacityInBytes);
+	}
+
+	/**
+	 * Returns the cached value for the key, or null if the key is not cached.
+	 * 
+	 * @param key
+	 * @return
+	 */
+	public synchronized Object get(SurfaceFrameKey key) {
+		Entry entry = entryMap.get(key);
+		if (entry == null) {
+			missCount++;
+			return null;
+		}
+		hitCount++;
+		return entry.value;
+	}
+
+	/**
+	 * Adds a value to the cache, evicting least-recently-used entries as
+	 * needed.
+	 * 
+	 * @param key
+	 * @param value
+	 * @param valueSizeInBytes
+	 *            approximate retained size of the value
+	 */
+	public void put(SurfaceFrameKey key, Object value, long valueSizeInBytes) {
+		List<Entry> evictedList;
+		EvictionListener listener;
+		synchronized (this) {
+			// Replace any existing entry
+			Entry previous = entryMap.remove(key);
+			if (previous != null) {
+				sizeInBytes -= previous.sizeInBytes;
+			}
+
+			// Values that can never fit are not cached
+			if (valueSizeInBytes > capacityInBytes) {
+				return;
+			}
+
+			evictedList = trimToSize(capacityInBytes - valueSizeInBytes);
+			entryMap.put(key, new Entry(key, value, valueSizeInBytes));
+			sizeInBytes += valueSizeInBytes;
+			listener = evictionListener;
+		}
+		notifyEvicted(listener, evictedList);
+	}
+
+	/**
+	 * Removes all entries. The counters are not reset.
+	 */
+	public synchronized void clear() {
+		entryMap.clear();
+		sizeInBytes = 0;
+	}
+
+	/**
+	 * Sets the capacity, evicting entries if the cache is now over capacity.
+	 * 
+	 * @param capacityInBytes
+	 */
+	public void setCapacityInBytes(long capacityInBytes) {
+		List<Entry> evictedList;
+		EvictionListener listener;
+		synchronized (this) {
+			this.capacityInBytes = Math.max(0, capacityInBytes);
+			evictedList = trimToSize(this.capacityInBytes);
+			listener = evictionListener;
+		}
+		notifyEvicted(listener, evictedList);
+	}
+
+	/**
+	 * Sets the listener that receives evicted entries.
+	 * 
+	 * @param evictionListener
+	 *            the listener, or null to drop evicted entries
+	 */
+	public synchronized void setEvictionListener(EvictionListener evictionListener) {
+		this.evictionListener = evictionListener;
+	}
+
+	public synchronized long getCapacityInBytes() {
+		return capacityInBytes;
+	}
+
+	public synchronized long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	public synchronized int getEntryCount() {
+		return entryMap.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * Resets the hit, miss and eviction counters.
+	 */
+	public synchronized void resetCounters() {
+		hitCount = 0;
+		missCount = 0;
+		evictionCount = 0;
+	}
+
+	// Evicts least-recently-used entries until the size is within the limit,
+	// returning the evicted entries
+	private List<Entry> trimToSize(long limitInBytes) {
+		List<Entry> evictedList = Collections.emptyList();
+		Iterator<Map.Entry<SurfaceFrameKey, Entry>> iterator = entryMap.entrySet().iterator();
+		while (sizeInBytes > limitInBytes && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			iterator.remove();
+			sizeInBytes -= entry.sizeInBytes;
+			evictionCount++;
+			if (evictedList.isEmpty()) {
+				evictedList = new ArrayList<Entry>();
+			}
+			evictedList.add(entry);
+		}
+		return evictedList;
+	}
+
+	private static void notifyEvicted(EvictionListener listener, List<Entry> evictedList) {
+		if (listener != null) {
+			for (Entry entry : evictedList) {
+				listener.entryEvicted(entry.key, entry.value);
+			}
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "SurfaceFrameCache[entries=" + entryMap.size() + ", size=" + sizeInBytes + "/" + capacityInBytes + " bytes, hits=" + hitCount + ", misses=" + missCount
+				+ ", evictions=" + evictionCount + "]";
+	}
+}
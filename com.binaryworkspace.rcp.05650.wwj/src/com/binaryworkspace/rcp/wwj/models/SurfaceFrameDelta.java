@@ -0,0 +1,266 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between two ARGB frames of the same size, kept as the cells
+ * of the square blocks that changed.
+ * <p>
+ * The frames are divided into blocks of blockSize * blockSize cells (smaller
+ * along the right and bottom edges). A block is dirty when any of its cells
+ * differs, and only dirty blocks are stored, so a delta of a slowly varying
+ * field is much smaller than the frame itself. The dirty blocks are exposed as
+ * rectangles (see getDirtyRegions()), so an update of the previous frame only
+ * needs to touch what changed.
+ * <p>
+ * SineWaveSurfaceModel caches images as keyframes plus deltas (see
+ * setCacheKeyframeInterval()), and SurfaceModelTileLayer updates the image of
+ * a tile by the delta from its previous frame, uploading only the dirty
+ * regions.
+ *
+ * @author Chris Ludka
+ *
+ */
+public final class SurfaceFrameDelta {
+
+	/** The width and height of a block, in cells, when none is specified. */
+	public static final int DEFAULT_BLOCK_SIZE = 32;
+
+	private static final int OVERHEAD_IN_BYTES = 64;
+
+	private final int width;
+
+	private final int height;
+
+	private final int blockSize;
+
+	/* Dirty block indices, ascending, as blockRow * blockColumns + blockColumn */
+	private final int[] dirtyBlocks;
+
+	/* Cells of the dirty blocks, block after block, row after row */
+	private final int[] cells;
+
+	private SurfaceFrameDelta(int width, int height, int blockSize, int[] dirtyBlocks, int[] cells) {
+		this.width = width;
+		this.height = height;
+		this.blockSize = blockSize;
+		this.dirtyBlocks = dirtyBlocks;
+		this.cells = cells;
+	}
+
+	/**
+	 * Computes the delta that turns the previous frame into the next frame.
+	 *
+	 * @param previous
+	 *            width * height cells with a row stride of width
+	 * @param next
+	 *            width * height cells with a row stride of width
+	 * @param width
+	 * @param height
+	 * @param blockSize
+	 *            the width and height of a block, in cells
+	 * @return
+	 */
+	public static SurfaceFrameDelta compute(int[] previous, int[] next, int width, int height, int blockSize) {
+		return compute(previous, next, width, height, blockSize, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Computes the delta that turns the previous frame into the next frame,
+	 * unless more than a number of cells lie in dirty blocks, in which case
+	 * the next frame is better kept whole and nothing is copied.
+	 *
+	 * @param previous
+	 *            width * height cells with a row stride of width
+	 * @param next
+	 *            width * height cells with a row stride of width
+	 * @param width
+	 * @param height
+	 * @param blockSize
+	 *            the width and height of a block, in cells
+	 * @param maxDirtyCellCount
+	 *            the number of cells of dirty blocks above which no delta is
+	 *            computed
+	 * @return the delta, or null if too many cells are dirty
+	 */
+	public static SurfaceFrameDelta compute(int[] previous, int[] next, int width, int height, int blockSize, int maxDirtyCellCount) {
+		if (blockSize < 1) {
+			throw new IllegalArgumentException("Block size must be at least 1: " + blockSize);
+		}
+		if (previous.length < width * height || next.length < width * height) {
+			throw new IllegalArgumentException("Frames are smaller than " + width + " x " + height);
+		}
+		int blockColumns = (width + blockSize - 1) / blockSize;
+		int blockRows = (height + blockSize - 1) / blockSize;
+
+		// Find the dirty blocks and the number of cells they hold
+		int[] dirtyBlocks = new int[blockColumns * blockRows];
+		int dirtyBlockCount = 0;
+		int cellCount = 0;
+		for (int blockRow = 0; blockRow < blockRows; blockRow++) {
+			int y0 = blockRow * blockSize;
+			int y1 = Math.min(height, y0 + blockSize);
+			for (int blockColumn = 0; blockColumn < blockColumns; blockColumn++) {
+				int x0 = blockColumn * blockSize;
+				int x1 = Math.min(width, x0 + blockSize);
+				if (isBlockDirty(previous, next, width, x0, x1, y0, y1)) {
+					dirtyBlocks[dirtyBlockCount++] = blockRow * blockColumns + blockColumn;
+					cellCount += (x1 - x0) * (y1 - y0);
+					if (cellCount > maxDirtyCellCount) {
+						return null;
+					}
+				}
+			}
+		}
+
+		// Copy the cells of the dirty blocks
+		int[] cells = new int[cellCount];
+		int cellIndex = 0;
+		for (int dirtyIndex = 0; dirtyIndex < dirtyBlockCount; dirtyIndex++) {
+			int block = dirtyBlocks[dirtyIndex];
+			int x0 = (block % blockColumns) * blockSize;
+			int x1 = Math.min(width, x0 + blockSize);
+			int y0 = (block / blockColumns) * blockSize;
+			int y1 = Math.min(height, y0 + blockSize);
+			for (int yIndex = y0; yIndex < y1; yIndex++) {
+				System.arraycopy(next, yIndex * width + x0, cells, cellIndex, x1 - x0);
+				cellIndex += x1 - x0;
+			}
+		}
+		int[] trimmedDirtyBlocks = new int[dirtyBlockCount];
+		System.arraycopy(dirtyBlocks, 0, trimmedDirtyBlocks, 0, dirtyBlockCount);
+		return new SurfaceFrameDelta(width, height, blockSize, trimmedDirtyBlocks, cells);
+	}
+
+	// Returns true if any cell of the block differs
+	private static boolean isBlockDirty(int[] previous, int[] next, int width, int x0, int x1, int y0, int y1) {
+		for (int yIndex = y0; yIndex < y1; yIndex++) {
+			int rowStart = yIndex * width;
+			for (int cellIndex = rowStart + x0; cellIndex < rowStart + x1; cellIndex++) {
+				if (previous[cellIndex] != next[cellIndex]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Turns a copy of the previous frame into the next frame, by writing the
+	 * cells of the dirty blocks only.
+	 *
+	 * @param frame
+	 *            width * height cells with a row stride of width
+	 */
+	public void applyTo(int[] frame) {
+		int blockColumns = getBlockColumnCount();
+		int cellIndex = 0;
+		for (int block : dirtyBlocks) {
+			int x0 = (block % blockColumns) * blockSize;
+			int x1 = Math.min(width, x0 + blockSize);
+			int y0 = (block / blockColumns) * blockSize;
+			int y1 = Math.min(height, y0 + blockSize);
+			for (int yIndex = y0; yIndex < y1; yIndex++) {
+				System.arraycopy(cells, cellIndex, frame, yIndex * width + x0, x1 - x0);
+				cellIndex += x1 - x0;
+			}
+		}
+	}
+
+	/**
+	 * Provides the dirty blocks as rectangles, in cells. Dirty blocks that are
+	 * adjacent in a row of blocks are joined, and runs that span the same
+	 * columns in consecutive rows of blocks are joined, so an update needs few
+	 * rectangles.
+	 *
+	 * @return
+	 */
+	public List<Rectangle> getDirtyRegions() {
+		List<Rectangle> regionList = new ArrayList<Rectangle>();
+		int blockColumns = getBlockColumnCount();
+
+		// Open rectangles of the previous row of blocks, by first and last column
+		Map<Long, Rectangle> openRegionMap = new HashMap<Long, Rectangle>();
+		Map<Long, Rectangle> nextOpenRegionMap = new HashMap<Long, Rectangle>();
+		int dirtyIndex = 0;
+		while (dirtyIndex < dirtyBlocks.length) {
+			int blockRow = dirtyBlocks[dirtyIndex] / blockColumns;
+			nextOpenRegionMap.clear();
+			while (dirtyIndex < dirtyBlocks.length && dirtyBlocks[dirtyIndex] / blockColumns == blockRow) {
+				// Run of adjacent dirty blocks
+				int firstColumn = dirtyBlocks[dirtyIndex] % blockColumns;
+				int lastColumn = firstColumn;
+				dirtyIndex++;
+				while (dirtyIndex < dirtyBlocks.length && lastColumn + 1 < blockColumns && dirtyBlocks[dirtyIndex] == blockRow * blockColumns + lastColumn + 1) {
+					lastColumn++;
+					dirtyIndex++;
+				}
+
+				// Extend the run of the previous row of blocks, or start a rectangle
+				int y0 = blockRow * blockSize;
+				int y1 = Math.min(height, y0 + blockSize);
+				Long span = ((long) firstColumn << 32) | lastColumn;
+				Rectangle region = openRegionMap.get(span);
+				if (region != null && region.y + region.height == y0) {
+					region.height = y1 - region.y;
+				} else {
+					int x0 = firstColumn * blockSize;
+					int x1 = Math.min(width, (lastColumn + 1) * blockSize);
+					region = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+					regionList.add(region);
+				}
+				nextOpenRegionMap.put(span, region);
+			}
+			Map<Long, Rectangle> swapMap = openRegionMap;
+			openRegionMap = nextOpenRegionMap;
+			nextOpenRegionMap = swapMap;
+		}
+		return regionList;
+	}
+
+	/**
+	 * Returns true if the frames are identical.
+	 *
+	 * @return
+	 */
+	public boolean isEmpty() {
+		return dirtyBlocks.length == 0;
+	}
+
+	public int getDirtyBlockCount() {
+		return dirtyBlocks.length;
+	}
+
+	public int getDirtyCellCount() {
+		return cells.length;
+	}
+
+	/**
+	 * Provides the approximate retained size, for cache accounting.
+	 *
+	 * @return
+	 */
+	public long getSizeInBytes() {
+		return 4L * (dirtyBlocks.length + cells.length) + OVERHEAD_IN_BYTES;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	private int getBlockColumnCount() {
+		return (width + blockSize - 1) / blockSize;
+	}
+}
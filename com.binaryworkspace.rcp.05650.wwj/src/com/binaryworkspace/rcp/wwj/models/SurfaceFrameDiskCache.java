@@ -0,0 +1,533 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A size-capped, least-recently-used cache of surface model frames stored as
+ * memory-mapped files in a directory.
+ * <p>
+ * This is the second cache tier behind the in-memory SurfaceFrameCache: frames
+ * that are evicted from the heap, or computed in an earlier session, are read
+ * back from disk instead of being recomputed. A frame is stored as a flat
+ * int[] (packed ARGB pixels) or float[] (magnitudes) in the cell order of the
+ * model, preceded by a small header. The file name is derived from a namespace
+ * and the full SurfaceFrameKey, so frames with different parameters never
+ * collide.
+ * <p>
+ * Frames are written on a background thread, so the thread that computed a
+ * frame never waits for the disk; a frame is read back from its pending copy
+ * until it is written, and writes are skipped while too many bytes are
+ * pending. A file is written under a temporary name, flushed to disk before
+ * its magic is written and only then renamed, so a crash never leaves a
+ * readable but incomplete frame, and a file is unmapped as soon as it has been
+ * read or written, so evicted files can always be deleted. Files are read,
+ * written and flushed without holding the lock of the cache, so a read never
+ * waits for a write to reach the disk.
+ * <p>
+ * The last-modified time of a file is updated on every hit, so the
+ * least-recently-used order survives between sessions. All methods are thread
+ * safe; instances for the same directory should be shared (see
+ * forDirectory()).
+ *
+ * @author Chris Ludka
+ *
+ */
+public class SurfaceFrameDiskCache {
+
+	private static final Logger LOGGER = Logger.getLogger(SurfaceFrameDiskCache.class.getName());
+
+	private static final String FILE_SUFFIX = ".frame";
+
+	/**
+	 * Appended to the name of a frame file while it is being written.
+	 */
+	private static final String PART_FILE_SUFFIX = ".part";
+
+	/**
+	 * "SFC1", written last so partially written files are never read.
+	 */
+	private static final int MAGIC = 0x53464331;
+
+	private static final int INT_ELEMENTS = 0;
+
+	private static final int FLOAT_ELEMENTS = 1;
+
+	/**
+	 * Magic, element type, width and height.
+	 */
+	private static final int HEADER_SIZE_IN_BYTES = 16;
+
+	/**
+	 * Bytes of frames waiting to be written, above which further writes are
+	 * skipped.
+	 */
+	private static final long MAX_PENDING_WRITE_SIZE_IN_BYTES = 64L * 1024 * 1024;
+
+	/**
+	 * Writes the frames of every cache, in the order they were stored.
+	 */
+	private static final ExecutorService WRITE_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, SurfaceFrameDiskCache.class.getSimpleName() + "-Writer");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	});
+
+	private static final Map<File, SurfaceFrameDiskCache> instanceMap = new LinkedHashMap<File, SurfaceFrameDiskCache>();
+
+	private final File directory;
+
+	/*
+	 * File sizes by file name in access order, so iteration starts at the
+	 * least-recently-used file.
+	 */
+	private final LinkedHashMap<String, Long> fileSizeMap = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	/*
+	 * Copies of the frames waiting to be written, int[] or float[], by file
+	 * name. A copy is kept until its file is published, and never modified.
+	 */
+	private final Map<String, Object> pendingWriteMap = new HashMap<String, Object>();
+
+	private long pendingWriteSizeInBytes = 0;
+
+	private long capacityInBytes;
+
+	/* Includes the space reserved by the frame being written */
+	private long sizeInBytes = 0;
+
+	private long hitCount = 0;
+
+	private long missCount = 0;
+
+	private long evictionCount = 0;
+
+	/**
+	 * Provides the shared cache for a directory, creating it on first use. The
+	 * capacity of an existing cache is updated to the given capacity.
+	 *
+	 * @param directory
+	 * @param capacityInBytes
+	 * @return
+	 */
+	public static synchronized SurfaceFrameDiskCache forDirectory(File directory, long capacityInBytes) {
+		File absoluteDirectory = directory.getAbsoluteFile();
+		SurfaceFrameDiskCache diskCache = instanceMap.get(absoluteDirectory);
+		if (diskCache == null) {
+			diskCache = new SurfaceFrameDiskCache(absoluteDirectory, capacityInBytes);
+			instanceMap.put(absoluteDirectory, diskCache);
+		} else {
+			diskCache.setCapacityInBytes(capacityInBytes);
+		}
+		return diskCache;
+	}
+
+	/**
+	 * Creates a cache in the directory, indexing the frames already stored
+	 * there. Prefer forDirectory() so caches of the same directory are shared.
+	 *
+	 * @param directory
+	 * @param capacityInBytes
+	 */
+	public SurfaceFrameDiskCache(File directory, long capacityInBytes) {
+		this.directory = directory;
+		this.capacityInBytes = Math.max(0, capacityInBytes);
+
+		// Index existing frames, oldest first, deleting frames left incomplete
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			LOGGER.log(Level.WARNING, "Unable to create frame cache directory: " + directory);
+		}
+		File[] partFiles = directory.listFiles(new FileFilter() {
+
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(FILE_SUFFIX + PART_FILE_SUFFIX);
+			}
+		});
+		if (partFiles != null) {
+			for (File partFile : partFiles) {
+				deleteFile(partFile);
+			}
+		}
+		File[] files = directory.listFiles(new FileFilter() {
+
+			@Override
+			public boolean accept(File file) {
+				return file.isFile() && file.getName().endsWith(FILE_SUFFIX);
+			}
+		});
+		if (files != null) {
+			Arrays.sort(files, new Comparator<File>() {
+
+				@Override
+				public int compare(File file1, File file2) {
+					return Long.compare(file1.lastModified(), file2.lastModified());
+				}
+			});
+			for (File file : files) {
+				fileSizeMap.put(file.getName(), file.length());
+				sizeInBytes += file.length();
+			}
+		}
+		trimToSize(this.capacityInBytes);
+	}
+
+	/**
+	 * Reads the pixels of a frame into the target array.
+	 *
+	 * @param namespace
+	 *            identifies the model and anything else the frame depends on
+	 * @param key
+	 * @param target
+	 *            must hold at least width * height elements
+	 * @return true if the frame was found, otherwise false
+	 */
+	public boolean read(String namespace, SurfaceFrameKey key, int[] target) {
+		return read(getFileName(namespace, key), key, INT_ELEMENTS, target);
+	}
+
+	/**
+	 * Reads the magnitudes of a frame into the target array.
+	 *
+	 * @param namespace
+	 *            identifies the model and anything else the frame depends on
+	 * @param key
+	 * @param target
+	 *            must hold at least width * height elements
+	 * @return true if the frame was found, otherwise false
+	 */
+	public boolean read(String namespace, SurfaceFrameKey key, float[] target) {
+		return read(getFileName(namespace, key), key, FLOAT_ELEMENTS, target);
+	}
+
+	/**
+	 * Stores the pixels of a frame. The pixels are copied and written on a
+	 * background thread.
+	 *
+	 * @param namespace
+	 *            identifies the model and anything else the frame depends on
+	 * @param key
+	 * @param source
+	 *            holds width * height elements
+	 */
+	public void write(String namespace, SurfaceFrameKey key, int[] source) {
+		enqueueWrite(namespace, key, INT_ELEMENTS, Arrays.copyOf(source, key.getWidth() * key.getHeight()));
+	}
+
+	/**
+	 * Stores the magnitudes of a frame. The magnitudes are copied and written
+	 * on a background thread.
+	 *
+	 * @param namespace
+	 *            identifies the model and anything else the frame depends on
+	 * @param key
+	 * @param source
+	 *            holds width * height elements
+	 */
+	public void write(String namespace, SurfaceFrameKey key, float[] source) {
+		enqueueWrite(namespace, key, FLOAT_ELEMENTS, Arrays.copyOf(source, key.getWidth() * key.getHeight()));
+	}
+
+	/**
+	 * Waits until every frame stored so far has been written.
+	 */
+	public void flush() {
+		try {
+			WRITE_EXECUTOR.submit(new Runnable() {
+
+				@Override
+				public void run() {
+					// Runs after the writes queued before it
+				}
+			}).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			LOGGER.log(Level.WARNING, "Unable to flush frame cache: " + directory, e.getCause());
+		}
+	}
+
+	/**
+	 * Deletes all frames, including those waiting to be written. The counters
+	 * are not reset.
+	 */
+	public synchronized void clear() {
+		pendingWriteMap.clear();
+		pendingWriteSizeInBytes = 0;
+		trimToSize(0);
+	}
+
+	/**
+	 * Sets the capacity, evicting frames if the cache is now over capacity.
+	 *
+	 * @param capacityInBytes
+	 */
+	public synchronized void setCapacityInBytes(long capacityInBytes) {
+		this.capacityInBytes = Math.max(0, capacityInBytes);
+		trimToSize(this.capacityInBytes);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	public synchronized long getCapacityInBytes() {
+		return capacityInBytes;
+	}
+
+	public synchronized long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	public synchronized int getEntryCount() {
+		return fileSizeMap.size();
+	}
+
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	// Copies a pending or stored frame into the target array. Only the lookup
+	// holds the lock, the file is mapped and copied without it
+	private boolean read(String fileName, SurfaceFrameKey key, int elementType, Object target) {
+		int cellCount = key.getWidth() * key.getHeight();
+		Object pendingFrame;
+		synchronized (this) {
+			pendingFrame = pendingWriteMap.get(fileName);
+			if (pendingFrame != null && getElementType(pendingFrame) == elementType) {
+				hitCount++;
+			} else if (fileSizeMap.get(fileName) == null) {
+				missCount++;
+				return false;
+			} else {
+				pendingFrame = null;
+			}
+		}
+		if (pendingFrame != null) {
+			System.arraycopy(pendingFrame, 0, target, 0, cellCount);
+			return true;
+		}
+
+		File file = new File(directory, fileName);
+		boolean isRead = false;
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			FileChannel channel = randomAccessFile.getChannel();
+			if (channel.size() == HEADER_SIZE_IN_BYTES + 4L * cellCount) {
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt(0) == MAGIC && buffer.getInt(4) == elementType && buffer.getInt(8) == key.getWidth() && buffer.getInt(12) == key.getHeight()) {
+					buffer.position(HEADER_SIZE_IN_BYTES);
+					if (elementType == INT_ELEMENTS) {
+						buffer.asIntBuffer().get((int[]) target, 0, cellCount);
+					} else {
+						buffer.asFloatBuffer().get((float[]) target, 0, cellCount);
+					}
+					isRead = true;
+				}
+				unmap(buffer);
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to read frame: " + file, e);
+		}
+		if (isRead) {
+			file.setLastModified(System.currentTimeMillis());
+		}
+
+		synchronized (this) {
+			if (isRead) {
+				hitCount++;
+			} else {
+				// The file is unreadable or incomplete, unless it is being
+				// replaced
+				missCount++;
+				if (!pendingWriteMap.containsKey(fileName)) {
+					delete(fileName);
+				}
+			}
+		}
+		return isRead;
+	}
+
+	// Queues a copy of a frame to be written, unless too many bytes are pending
+	private synchronized void enqueueWrite(String namespace, final SurfaceFrameKey key, final int elementType, final Object frame) {
+		final String fileName = getFileName(namespace, key);
+		long frameSizeInBytes = 4L * key.getWidth() * key.getHeight();
+		if (pendingWriteMap.containsKey(fileName) || pendingWriteSizeInBytes + frameSizeInBytes > MAX_PENDING_WRITE_SIZE_IN_BYTES) {
+			return;
+		}
+		pendingWriteMap.put(fileName, frame);
+		pendingWriteSizeInBytes += frameSizeInBytes;
+		WRITE_EXECUTOR.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				store(fileName, key, elementType, frame);
+			}
+		});
+	}
+
+	// Writes a queued frame. Space is reserved under the lock, the file is
+	// written and flushed without it, and the frame is published under the
+	// lock once its magic is on disk; until then it is read from its copy
+	private void store(String fileName, SurfaceFrameKey key, int elementType, Object frame) {
+		long frameSizeInBytes = 4L * key.getWidth() * key.getHeight();
+		long fileSizeInBytes = HEADER_SIZE_IN_BYTES + frameSizeInBytes;
+		synchronized (this) {
+			// Skip frames discarded by clear() since they were queued
+			if (pendingWriteMap.get(fileName) != frame) {
+				return;
+			}
+			if (fileSizeInBytes > capacityInBytes) {
+				pendingWriteMap.remove(fileName);
+				pendingWriteSizeInBytes -= frameSizeInBytes;
+				return;
+			}
+
+			// Make room for the frame
+			delete(fileName);
+			trimToSize(capacityInBytes - fileSizeInBytes);
+			sizeInBytes += fileSizeInBytes;
+		}
+
+		File partFile = new File(directory, fileName + PART_FILE_SUFFIX);
+		boolean isWritten = writeFile(partFile, key, elementType, frame);
+
+		synchronized (this) {
+			boolean isPending = pendingWriteMap.get(fileName) == frame;
+			if (isPending) {
+				pendingWriteMap.remove(fileName);
+				pendingWriteSizeInBytes -= frameSizeInBytes;
+			}
+			if (isWritten && isPending && partFile.renameTo(new File(directory, fileName))) {
+				fileSizeMap.put(fileName, fileSizeInBytes);
+			} else {
+				// Failed, or discarded by clear() while it was written
+				sizeInBytes -= fileSizeInBytes;
+				deleteFile(partFile);
+			}
+		}
+	}
+
+	// Writes a frame to a file: data first, then the magic once the data is on
+	// disk
+	private static boolean writeFile(File file, SurfaceFrameKey key, int elementType, Object frame) {
+		long fileSizeInBytes = HEADER_SIZE_IN_BYTES + 4L * key.getWidth() * key.getHeight();
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+			randomAccessFile.setLength(fileSizeInBytes);
+			MappedByteBuffer buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, fileSizeInBytes);
+			buffer.putInt(4, elementType);
+			buffer.putInt(8, key.getWidth());
+			buffer.putInt(12, key.getHeight());
+			buffer.position(HEADER_SIZE_IN_BYTES);
+			if (elementType == INT_ELEMENTS) {
+				buffer.asIntBuffer().put((int[]) frame);
+			} else {
+				buffer.asFloatBuffer().put((float[]) frame);
+			}
+			buffer.force();
+			buffer.putInt(0, MAGIC);
+			buffer.force();
+			unmap(buffer);
+			return true;
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to write frame: " + file, e);
+			return false;
+		}
+	}
+
+	private static int getElementType(Object frame) {
+		return frame instanceof int[] ? INT_ELEMENTS : FLOAT_ELEMENTS;
+	}
+
+	// Unmaps a buffer now rather than when it is garbage collected, so its file
+	// can be deleted; the buffer must not be used afterwards
+	private static void unmap(MappedByteBuffer buffer) {
+		try {
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner;
+			try {
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			} catch (NoSuchMethodException e) {
+				// Java 8: the buffer exposes its cleaner
+				Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+				cleanerMethod.setAccessible(true);
+				Object cleaner = cleanerMethod.invoke(buffer);
+				if (cleaner != null) {
+					cleaner.getClass().getMethod("clean").invoke(cleaner);
+				}
+				return;
+			}
+			Field unsafeField = unsafeClass.getDeclaredField("theUnsafe");
+			unsafeField.setAccessible(true);
+			invokeCleaner.invoke(unsafeField.get(null), buffer);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Left to the garbage collector
+			LOGGER.log(Level.FINE, "Unable to unmap frame buffer", e);
+		}
+	}
+
+	// Deletes a stored frame
+	private void delete(String fileName) {
+		Long fileSizeInBytes = fileSizeMap.remove(fileName);
+		if (fileSizeInBytes != null) {
+			sizeInBytes -= fileSizeInBytes;
+		}
+		deleteFile(new File(directory, fileName));
+	}
+
+	private static void deleteFile(File file) {
+		if (file.exists() && !file.delete()) {
+			// Mapped files can not be deleted on some platforms until unmapped
+			file.deleteOnExit();
+		}
+	}
+
+	// Evicts least-recently-used frames until the size is within the limit
+	private void trimToSize(long limitInBytes) {
+		Iterator<Map.Entry<String, Long>> iterator = fileSizeMap.entrySet().iterator();
+		while (sizeInBytes > limitInBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> entry = iterator.next();
+			iterator.remove();
+			sizeInBytes -= entry.getValue();
+			evictionCount++;
+			deleteFile(new File(directory, entry.getKey()));
+		}
+	}
+
+	// Provides a file name holding the namespace and every key parameter
+	private static String getFileName(String namespace, SurfaceFrameKey key) {
+		return namespace + "_" + key.getType() + "_" + key.getWidth() + "x" + key.getHeight() + "_" + Integer.toHexString(Float.floatToIntBits(key.getGridIncrement())) + "_"
+				+ key.getFrames() + "_" + key.getFrame() + "_" + Integer.toHexString(Float.floatToIntBits(key.getAlphaWeight())) + FILE_SUFFIX;
+	}
+}
@@ -0,0 +1,141 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import com.binaryworkspace.rcp.wwj.enums.SurfaceFrameType;
+
+/**
+ * Immutable cache key for a single frame of a surface model. The key holds the
+ * full parameter tuple used to produce the frame so frames produced with
+ * different dimensions, grid increments, frame counts or alpha weights never
+ * collide.
+ * 
+ * @author Chris Ludka
+ * 
+ */
+public final class SurfaceFrameKey {
+
+	private final SurfaceFrameType type;
+
+	private final int width;
+
+	private final int height;
+
+	private final float gridIncrement;
+
+	private final int frames;
+
+	private final int frame;
+
+	private final float alphaWeight;
+
+	private final int hashCode;
+
+	/**
+	 * Creates a key for a frame. Frame types that are not affected by the alpha
+	 * weight (magnitudes and colors) should be given an alpha weight of 1.0f.
+	 * 
+	 * @param type
+	 * @param width
+	 * @param height
+	 * @param gridIncrement
+	 * @param frames
+	 * @param frame
+	 * @param alphaWeight
+	 */
+	public SurfaceFrameKey(SurfaceFrameType type, int width, int height, float gridIncrement, int frames, int frame, float alphaWeight) {
+		this.type = type;
+		this.width = width;
+		this.height = height;
+		this.gridIncrement = gridIncrement;
+		this.frames = frames;
+		this.frame = frame;
+		this.alphaWeight = alphaWeight;
+
+		// Keys are probed on every frame, so compute the hash once
+		int result = type.hashCode();
+		result = 31 * result + width;
+		result = 31 * result + height;
+		result = 31 * result + Float.floatToIntBits(gridIncrement);
+		result = 31 * result + frames;
+		result = 31 * result + frame;
+		result = 31 * result + Float.floatToIntBits(alphaWeight);
+		this.hashCode = result;
+	}
+
+	public SurfaceFrameType getType() {
+		return type;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public float getGridIncrement() {
+		return gridIncrement;
+	}
+
+	public int getFrames() {
+		return frames;
+	}
+
+	public int getFrame() {
+		return frame;
+	}
+
+	public float getAlphaWeight() {
+		return alphaWeight;
+	}
+
+	/**
+	 * Provides a key with the same parameters for another frame of the
+	 * sequence.
+	 * 
+	 * @param frame
+	 * @return
+	 */
+	public SurfaceFrameKey withFrame(int frame) {
+		return new SurfaceFrameKey(type, width, height, gridIncrement, frames, frame, alphaWeight);
+	}
+
+	/**
+	 * Returns true if the other key belongs to the same frame sequence, i.e.
+	 * all parameters other than the frame are equal.
+	 * 
+	 * @param other
+	 * @return
+	 */
+	public boolean isSameSequence(SurfaceFrameKey other) {
+		return other != null //
+				&& type == other.type //
+				&& width == other.width //
+				&& height == other.height //
+				&& Float.floatToIntBits(gridIncrement) == Float.floatToIntBits(other.gridIncrement) //
+				&& frames == other.frames //
+				&& Float.floatToIntBits(alphaWeight) == Float.floatToIntBits(other.alphaWeight);
+	}
+
+	@Override
+	public int hashCode() {
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof SurfaceFrameKey)) {
+			return false;
+		}
+		SurfaceFrameKey other = (SurfaceFrameKey) obj;
+		return frame == other.frame && isSameSequence(other);
+	}
+
+	@Override
+	public String toString() {
+		return type + "[" + width + "x" + height + ", gridIncrement=" + gridIncrement + ", frame=" + frame + "/" + frames + ", alpha=" + alphaWeight + "]";
+	}
+}
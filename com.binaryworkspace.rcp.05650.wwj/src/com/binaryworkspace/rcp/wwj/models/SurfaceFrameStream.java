@@ -0,0 +1,238 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streams a sequence of frames of a surface model from a producer thread to a
+ * consumer through a bounded queue of reusable frame buffers.
+ * <p>
+ * A fixed number of buffers circulates between the producer and the
+ * consumer. The producer takes a free buffer, fills it with the next frame
+ * and hands it to the consumer; the consumer takes the frame, uses it and
+ * recycles it. When every buffer is waiting to be consumed the producer
+ * blocks, so a slow consumer throttles the producer (backpressure), and no
+ * buffers are created once each of them has been used.
+ * <p>
+ * The sequence runs from the start frame up to the frame count and then
+ * either ends or, when looping, continues at frame 0. The model parameters
+ * are fixed when the stream is opened (see e.g.
+ * SineWaveSurfaceModel.openMagnitudeStream()), so frames are produced without
+ * re-validating or re-passing them. A stream is meant to be consumed by a
+ * single thread, such as the UI thread or an export thread.
+ *
+ * @author Chris Ludka
+ *
+ * @param <T>
+ *            the frame buffer type, e.g. float[]
+ */
+public class SurfaceFrameStream<T> {
+
+	/**
+	 * Creates and fills the frame buffers of a stream. Both methods are called
+	 * from the producer thread.
+	 */
+	public interface Source<T> {
+		T createBuffer();
+
+		void fillBuffer(T buffer, int frame);
+	}
+
+	/**
+	 * A frame buffer of the stream and the index of the frame it holds.
+	 */
+	public static final class Frame<T> {
+
+		private final T buffer;
+
+		private int frame;
+
+		private Frame(T buffer) {
+			this.buffer = buffer;
+		}
+
+		public T getBuffer() {
+			return buffer;
+		}
+
+		public int getFrame() {
+			return frame;
+		}
+	}
+
+	/**
+	 * Marks the end of a sequence that does not loop.
+	 */
+	private final Frame<T> endOfStream = new Frame<T>(null);
+
+	private final Source<T> source;
+
+	private final int frameCount;
+
+	private final boolean isLooping;
+
+	private final BlockingQueue<Frame<T>> freeQueue;
+
+	private final BlockingQueue<Frame<T>> readyQueue;
+
+	private final Thread producerThread;
+
+	private volatile boolean isClosed = false;
+
+	private volatile Throwable failure;
+
+	/**
+	 * Opens a stream and starts producing frames.
+	 *
+	 * @param source
+	 *            creates and fills the frame buffers
+	 * @param frameCount
+	 *            number of frames in the sequence
+	 * @param startFrame
+	 *            the first frame produced
+	 * @param isLooping
+	 *            true to continue at frame 0 after the last frame
+	 * @param bufferCount
+	 *            number of frame buffers, at least 2 so the producer can work
+	 *            while the consumer holds a frame
+	 */
+	public SurfaceFrameStream(Source<T> source, int frameCount, final int startFrame, boolean isLooping, int bufferCount) {
+		if (frameCount < 1) {
+			throw new IllegalArgumentException("Frame count must be at least 1: " + frameCount);
+		}
+		if (startFrame < 0) {
+			throw new IllegalArgumentException("Start frame must not be negative: " + startFrame);
+		}
+		if (bufferCount < 2) {
+			throw new IllegalArgumentException("Buffer count must be at least 2: " + bufferCount);
+		}
+		this.source = source;
+		this.frameCount = frameCount;
+		this.isLooping = isLooping;
+
+		// The ready queue can also hold the end of stream marker
+		freeQueue = new ArrayBlockingQueue<Frame<T>>(bufferCount);
+		readyQueue = new ArrayBlockingQueue<Frame<T>>(bufferCount + 1);
+		producerThread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				produce(startFrame);
+			}
+		}, SurfaceFrameStream.class.getSimpleName());
+		producerThread.setDaemon(true);
+		producerThread.setPriority(Thread.NORM_PRIORITY - 1);
+
+		// Buffers are created on the producer thread when first needed
+		for (int bufferIndex = 0; bufferIndex < bufferCount; bufferIndex++) {
+			freeQueue.add(new Frame<T>(null));
+		}
+		producerThread.start();
+	}
+
+	/**
+	 * Takes the next frame, waiting for it to be produced. The frame must be
+	 * handed back with recycle() once it is no longer used.
+	 *
+	 * @return the next frame, or null at the end of the sequence or once the
+	 *         stream is closed
+	 * @throws InterruptedException
+	 */
+	public Frame<T> take() throws InterruptedException {
+		if (isClosed) {
+			return null;
+		}
+		return toFrame(readyQueue.take());
+	}
+
+	/**
+	 * Takes the next frame if it has been produced, without waiting.
+	 *
+	 * @return the next frame, or null if it is not ready, at the end of the
+	 *         sequence or once the stream is closed
+	 */
+	public Frame<T> poll() {
+		if (isClosed) {
+			return null;
+		}
+		return toFrame(readyQueue.poll());
+	}
+
+	/**
+	 * Hands a consumed frame back so its buffer can be refilled.
+	 *
+	 * @param frame
+	 */
+	public void recycle(Frame<T> frame) {
+		if (frame != null && frame != endOfStream && !isClosed) {
+			freeQueue.offer(frame);
+		}
+	}
+
+	/**
+	 * Stops the producer. Frames taken before closing remain valid, but are
+	 * no longer recycled.
+	 */
+	public void close() {
+		isClosed = true;
+		producerThread.interrupt();
+		readyQueue.clear();
+		freeQueue.clear();
+	}
+
+	public boolean isClosed() {
+		return isClosed;
+	}
+
+	public int getFrameCount() {
+		return frameCount;
+	}
+
+	public boolean isLooping() {
+		return isLooping;
+	}
+
+	// Produces frames until the sequence ends or the stream is closed
+	private void produce(int frame) {
+		try {
+			while (!isClosed) {
+				Frame<T> next = freeQueue.take();
+				if (next.buffer == null) {
+					next = new Frame<T>(source.createBuffer());
+				}
+				source.fillBuffer(next.buffer, frame);
+				next.frame = frame;
+				readyQueue.put(next);
+
+				// Advance, wrapping or ending after the last frame
+				frame++;
+				if (frame >= frameCount) {
+					if (!isLooping) {
+						break;
+					}
+					frame = 0;
+				}
+			}
+			readyQueue.put(endOfStream);
+		} catch (InterruptedException e) {
+			// Closed
+		} catch (RuntimeException e) {
+			failure = e;
+			readyQueue.offer(endOfStream);
+		}
+	}
+
+	// Converts a queue element to a frame, surfacing producer failures
+	private Frame<T> toFrame(Frame<T> frame) {
+		if (frame != endOfStream) {
+			return frame;
+		}
+
+		// Keep reporting the end to later calls
+		readyQueue.offer(endOfStream);
+		if (failure != null) {
+			throw new RuntimeException("Unable to produce frame", failure);
+		}
+		return null;
+	}
+}
@@ -0,0 +1,77 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import java.awt.image.BufferedImage;
+
+/**
+ * A surface model: a field of width * height cells, optionally animated over
+ * a number of frames, that can be evaluated one rectangular tile at a time.
+ * <p>
+ * A frame is described by a SurfaceFrameKey (size, grid increment, frame
+ * count, frame index and alpha weight); its type is ignored by the tile
+ * methods. Cell (xIndex, yIndex) of a frame is drawn as pixel (xIndex, yIndex)
+ * of its image. Tiles are written into caller-supplied primitive buffers, so
+ * a caller can evaluate a frame in parallel tiles, cache tiles, or only
+ * evaluate the tiles that are in view.
+ * <p>
+ * Implementations must be safe to call from several threads at once, as long
+ * as the threads write into different buffers or disjoint regions of a
+ * buffer.
+ *
+ * @author Chris Ludka
+ *
+ */
+public interface SurfaceModel {
+
+	/**
+	 * Evaluates the magnitudes, on the interval [0, 1], of a tile of a frame.
+	 * Models without a scalar field provide a constant magnitude.
+	 * <p>
+	 * Cell (tileX + column, tileY + row) is written to
+	 * <code>magnitudes[offset + row * stride + column]</code>.
+	 *
+	 * @param key
+	 *            the frame
+	 * @param tileX
+	 *            first column of the tile
+	 * @param tileY
+	 *            first row of the tile
+	 * @param tileWidth
+	 * @param tileHeight
+	 * @param magnitudes
+	 * @param offset
+	 * @param stride
+	 */
+	void getMagnitudeTile(SurfaceFrameKey key, int tileX, int tileY, int tileWidth, int tileHeight, float[] magnitudes, int offset, int stride);
+
+	/**
+	 * Evaluates the colors of a tile of a frame as packed, non-premultiplied
+	 * ARGB (see {@link java.awt.Color#getRGB()}), with the alpha weight of the
+	 * key applied.
+	 * <p>
+	 * Cell (tileX + column, tileY + row) is written to
+	 * <code>argb[offset + row * stride + column]</code>.
+	 *
+	 * @param key
+	 *            the frame
+	 * @param tileX
+	 *            first column of the tile
+	 * @param tileY
+	 *            first row of the tile
+	 * @param tileWidth
+	 * @param tileHeight
+	 * @param argb
+	 * @param offset
+	 * @param stride
+	 */
+	void getArgbTile(SurfaceFrameKey key, int tileX, int tileY, int tileWidth, int tileHeight, int[] argb, int offset, int stride);
+
+	/**
+	 * Provides the image of a whole frame. A new image is returned unless the
+	 * model caches images, so callers must not modify it.
+	 *
+	 * @param key
+	 *            the frame
+	 * @return
+	 */
+	BufferedImage getBufferedImage(SurfaceFrameKey key);
+}
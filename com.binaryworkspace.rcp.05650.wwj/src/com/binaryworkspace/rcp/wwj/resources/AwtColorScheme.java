@@ -23,6 +23,16 @@ public class AwtColorScheme {
 		// Hidden Constructor
 	}
 	
+	/**
+	 * Resolution of the shared visible spectrum lookup table.
+	 */
+	public static final int DEFAULT_LUT_RESOLUTION = 4096;
+
+	// Lazily builds the shared lookup table on first use
+	private static class VisibleSpectrumLutHolder {
+		private static final VisibleSpectrumLut LUT = new VisibleSpectrumLut(DEFAULT_LUT_RESOLUTION);
+	}
+
 	/**
 	 * Returns a solid color. Each color channel will be bounded to the octect
 	 * interval of [0, 255].
@@ -30,16 +40,24 @@ public class AwtColorScheme {
 	 * @return
 	 */
 	public static Color getVisibleSpectrum(float percentage) {
+		return new Color(getVisibleSpectrumArgb(percentage), true);
+	}
+
+	/**
+	 * Returns a solid color as a packed ARGB int (see {@link Color#getRGB()}),
+	 * evaluated from the polynomial fit without allocating. Each color channel
+	 * will be bounded to the octect interval of [0, 255].
+	 * 
+	 * @return
+	 */
+	public static int getVisibleSpectrumArgb(float percentage) {
 		// Ensure percentage is bounded to the interval [0.0, 1.0]
 		double x = ColorUtils.getBoundedDecimal(percentage);
 
-		// Get Math.pow for x
-		double x2 = Math.pow(x, 2.0);
-		double x3 = Math.pow(x, 3.0);
-		double x4 = Math.pow(x, 4.0);
-
-		// Obtain color channels
-		int[] result = new int[4];
+		// Get powers of x
+		double x2 = x * x;
+		double x3 = x2 * x;
+		double x4 = x3 * x;
 
 		/*
 		 * Red Octect Channel: 1.85813 + 1459.45 x - 9472.85 x^2 + 18540.8 x^3 -
@@ -49,27 +67,35 @@ public class AwtColorScheme {
 		 * interval [0, 255].
 		 */
 		double value = 1.85813 + 1459.45 * x - 9472.85 * x2 + 18540.8 * x3 - 10572.3 * x4;
-		result[0] = ColorUtils.getBoundedOctect(Math.round((float) value));
+		int red = ColorUtils.getBoundedOctect(Math.round((float) value));
 
 		/*
 		 * Green Channel: 18.673 - 911.549 x + 7267.87 x^2 - 12198.1 x^3 +
 		 * 5826.59 x^4, bounded on the interval [0, 1].
 		 */
 		value = 18.673 - 911.549 * x + 7267.87 * x2 - 12198.1 * x3 + 5826.59 * x4;
-		result[1] = ColorUtils.getBoundedOctect(Math.round((float) value));
+		int green = ColorUtils.getBoundedOctect(Math.round((float) value));
 
 		/*
 		 * Blue Channel: -43.5676 + 3460.92 x - 13727.5 x^2 + 18104.7 x^3 -
 		 * 7826.49 x^4, bounded on the interval [0, 1].
 		 */
 		value = -43.5676 + 3460.92 * x - 13727.5 * x2 + 18104.7 * x3 - 7826.49 * x4;
-		result[2] = ColorUtils.getBoundedOctect(Math.round((float) value));
+		int blue = ColorUtils.getBoundedOctect(Math.round((float) value));
 
-		// Alpha channel
-		result[3] = 255;
+		// Return result with a solid alpha channel
+		return (255 << 24) | (red << 16) | (green << 8) | blue;
+	}
 
-		// Return result
-		return new Color(result[0], result[1], result[2], result[3]);
+	/**
+	 * Returns the shared lookup table of the visible spectrum. The table is a
+	 * fast alternative to getVisibleSpectrum() for per-pixel or per-position
+	 * sampling.
+	 * 
+	 * @return
+	 */
+	public static VisibleSpectrumLut getVisibleSpectrumLut() {
+		return VisibleSpectrumLutHolder.LUT;
 	}
 
 	/**
@@ -0,0 +1,153 @@
+package com.binaryworkspace.rcp.wwj.resources;
+
+import java.awt.Color;
+
+import com.binaryworkspace.rcp.wwj.util.ColorUtils;
+import com.binaryworkspace.rcp.wwj.util.SurfaceKernels;
+
+/**
+ * A precomputed lookup table of the visible spectrum color scheme of
+ * AwtColorScheme.
+ * <p>
+ * The table samples the polynomial fit at <code>resolution</code> evenly
+ * spaced percentages on the interval [0, 1] and returns the nearest sample.
+ * Colors are provided either as packed ARGB ints (see {@link Color#getRGB()})
+ * or as shared, immutable AWT Colors, so no allocation takes place per lookup.
+ * <p>
+ * The lookup error of a channel is bounded by the slope of the polynomial over
+ * half a sample step, plus an octet of rounding. With the default resolution
+ * of {@link AwtColorScheme#DEFAULT_LUT_RESOLUTION} the error is at most one
+ * octet (see VisibleSpectrumLutTest).
+ * 
+ * @author Chris Ludka
+ * 
+ */
+public final class VisibleSpectrumLut {
+
+	private final int resolution;
+
+	private final float scale;
+
+	private final int[] argbTable;
+
+	private final Color[] colorTable;
+
+	/**
+	 * Builds a table with the given number of samples. At least two samples
+	 * are always taken.
+	 * 
+	 * @param resolution
+	 */
+	public VisibleSpectrumLut(int resolution) {
+		this.resolution = Math.max(2, resolution);
+		this.scale = this.resolution - 1;
+		this.argbTable = new int[this.resolution];
+		this.colorTable = new Color[this.resolution];
+		for (int index = 0; index < this.resolution; index++) {
+			argbTable[index] = AwtColorScheme.getVisibleSpectrumArgb(index / scale);
+			colorTable[index] = new Color(argbTable[index], true);
+		}
+	}
+
+	/**
+	 * Provides the number of samples in the table.
+	 * 
+	 * @return
+	 */
+	public int getResolution() {
+		return resolution;
+	}
+
+	/**
+	 * Returns a solid color as a packed ARGB int for a percentage on the
+	 * interval [0, 1]. Percentages outside the interval are bounded to it.
+	 * 
+	 * @param percentage
+	 * @return
+	 */
+	public int getArgb(float percentage) {
+		return argbTable[getIndex(percentage)];
+	}
+
+	/**
+	 * Returns a shared solid color for a percentage on the interval [0, 1].
+	 * Percentages outside the interval are bounded to it.
+	 * 
+	 * @param percentage
+	 * @return
+	 */
+	public Color getColor(float percentage) {
+		return colorTable[getIndex(percentage)];
+	}
+
+	/**
+	 * Maps count percentages to solid colors as packed ARGB ints.
+	 * <p>
+	 * The provided array is reused when it holds at least count colors,
+	 * otherwise a new array is allocated and returned.
+	 * 
+	 * @param percentages
+	 * @param count
+	 * @param argb
+	 *            the array to fill, may be null
+	 * @return the filled color array
+	 */
+	public int[] getArgb(float[] percentages, int count, int[] argb) {
+		return getArgb(percentages, 0, argb, 0, count);
+	}
+
+	/**
+	 * Maps count percentages, starting at sourceOffset, to solid colors as
+	 * packed ARGB ints written from targetOffset.
+	 * <p>
+	 * The provided array is reused when it can hold the colors, otherwise a
+	 * new array is allocated and returned.
+	 * 
+	 * @param percentages
+	 * @param sourceOffset
+	 * @param argb
+	 *            the array to fill, may be null
+	 * @param targetOffset
+	 * @param count
+	 * @return the filled color array
+	 */
+	public int[] getArgb(float[] percentages, int sourceOffset, int[] argb, int targetOffset, int count) {
+		return getArgbWithAlpha(percentages, sourceOffset, argb, targetOffset, count, 255);
+	}
+
+	/**
+	 * Maps count percentages, starting at sourceOffset, to colors with the
+	 * given alpha as packed ARGB ints written from targetOffset. The mapping
+	 * runs on the SurfaceKernels of the runtime, so it is vectorized where the
+	 * platform supports it.
+	 * <p>
+	 * The provided array is reused when it can hold the colors, otherwise a
+	 * new array is allocated and returned.
+	 * 
+	 * @param percentages
+	 * @param sourceOffset
+	 * @param argb
+	 *            the array to fill, may be null
+	 * @param targetOffset
+	 * @param count
+	 * @param alpha
+	 *            alpha on the octet interval [0, 255]
+	 * @return the filled color array
+	 */
+	public int[] getArgbWithAlpha(float[] percentages, int sourceOffset, int[] argb, int targetOffset, int count, int alpha) {
+		if (argb == null || argb.length < targetOffset + count) {
+			int[] resized = new int[targetOffset + count];
+			if (argb != null) {
+				System.arraycopy(argb, 0, resized, 0, Math.min(argb.length, targetOffset));
+			}
+			argb = resized;
+		}
+		SurfaceKernels.getInstance().lookupArgb(percentages, sourceOffset, argbTable, scale, alpha << 24, argb, targetOffset, count);
+		return argb;
+	}
+
+	// Provides the nearest table index of a percentage
+	private int getIndex(float percentage) {
+		return (int) (ColorUtils.getBoundedDecimal(percentage) * scale + 0.5f);
+	}
+}
@@ -12,6 +12,7 @@ import org.eclipse.swt.widgets.Shell;
 import org.eclipse.ui.PlatformUI;
 
 import com.binaryworkspace.rcp.wwj.enums.NetworkModeType;
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameDiskCache;
 import com.binaryworkspace.rcp.wwj.preferences.PreferenceKeys;
 
 /**
@@ -29,6 +30,17 @@ import com.binaryworkspace.rcp.wwj.preferences.PreferenceKeys;
  */
 public class WWJService {
 
+	/**
+	 * Name of the directory, inside the data file store, holding the surface
+	 * frame disk cache.
+	 */
+	public static final String SURFACE_FRAME_DIRECTORY_NAME = "SurfaceFrames";
+
+	/**
+	 * Default surface frame disk cache capacity of 1 GB.
+	 */
+	public static final long DEFAULT_SURFACE_FRAME_DISK_CACHE_CAPACITY_IN_BYTES = 1024L * 1024L * 1024L;
+
 	private IPreferenceStore preferencesStore;
 
 	public WWJService() {
@@ -74,6 +86,20 @@ public class WWJService {
 		});
 	}
 
+	/**
+	 * Provides the surface frame disk cache, which is kept in the
+	 * {@link #SURFACE_FRAME_DIRECTORY_NAME} directory of the current WWJ data
+	 * file store. Views sharing the data file store share the cache, so frames
+	 * computed by one view (or an earlier session) are replayed from disk.
+	 * 
+	 * @return
+	 */
+	public SurfaceFrameDiskCache getSurfaceFrameDiskCache() {
+		String dataFileStore = preferencesStore.getString(PreferenceKeys.WWJ_DATA_FILE_STORE.getKey());
+		File directory = new File(dataFileStore, SURFACE_FRAME_DIRECTORY_NAME);
+		return SurfaceFrameDiskCache.forDirectory(directory, DEFAULT_SURFACE_FRAME_DISK_CACHE_CAPACITY_IN_BYTES);
+	}
+
 	// Helper function to update preferences
 	private void updatePreferences() {
 		// Get preference values
@@ -44,6 +44,6 @@ public class AltitudePositionColors implements Path.PositionColors {
 	 */
 	@Override
 	public Color getColor(Position position, int ordinal) {
-		return AwtColorScheme.getVisibleSpectrum((float) position.getAltitude() / (float) maxAltitude);
+		return AwtColorScheme.getVisibleSpectrumLut().getColor((float) position.getAltitude() / (float) maxAltitude);
 	}
 }
\ No newline at end of file
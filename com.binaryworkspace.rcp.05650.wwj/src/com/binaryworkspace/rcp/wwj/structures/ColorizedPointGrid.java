@@ -1,16 +1,25 @@
 package com.binaryworkspace.rcp.wwj.structures;
 
+import gov.nasa.worldwind.View;
 import gov.nasa.worldwind.WWObjectImpl;
 import gov.nasa.worldwind.WorldWind;
+import gov.nasa.worldwind.geom.Angle;
 import gov.nasa.worldwind.geom.Box;
 import gov.nasa.worldwind.geom.Extent;
+import gov.nasa.worldwind.geom.Matrix;
+import gov.nasa.worldwind.geom.PickPointFrustum;
 import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.geom.Vec4;
+import gov.nasa.worldwind.globes.EllipsoidalGlobe;
+import gov.nasa.worldwind.globes.FlatGlobe;
+import gov.nasa.worldwind.globes.Globe;
 import gov.nasa.worldwind.layers.Layer;
 import gov.nasa.worldwind.pick.PickSupport;
 import gov.nasa.worldwind.render.DrawContext;
 import gov.nasa.worldwind.render.Highlightable;
 import gov.nasa.worldwind.render.OrderedRenderable;
+import gov.nasa.worldwind.terrain.SectorGeometry;
 import gov.nasa.worldwind.util.Logging;
 import gov.nasa.worldwind.util.OGLStackHandler;
 import gov.nasa.worldwind.util.OGLUtil;
@@ -18,10 +27,25 @@ import gov.nasa.worldwind.util.WWUtil;
 
 import java.awt.Color;
 import java.awt.Point;
+import java.awt.Rectangle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 import javax.media.opengl.GL;
 import javax.media.opengl.GL2;
@@ -35,6 +59,12 @@ import com.jogamp.common.nio.Buffers;
  * https://github.com/nasa/World-Wind-Java/blob/master/WorldWind/src/gov/nasa/
  * worldwindx/examples/lineofsight/PointGrid.java
  * 
+ * Positions are held as a structure of arrays (latitudes and longitudes in
+ * degrees, altitudes in meters) and colors as packed ARGB ints (see
+ * {@link Color#getRGB()}), so a grid of n points retains 28 * n bytes instead
+ * of n Position, 2 * n Angle and n Color objects. Position objects are only
+ * created for the points that are candidates of a pick.
+ * 
  * @author tag
  * @version $Id: PointGrid.java 1171 2013-02-11 21:45:02Z dcollins $
  */
@@ -46,16 +76,63 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	 */
 	protected static final Double DEFAULT_HIGHLIGHT_SCALE = 1.3;
 	
+	/**
+	 * The number of points below which ABSOLUTE positions are converted on the
+	 * calling thread, and the smallest range converted by one fork/join task.
+	 */
+	protected static final int MIN_PARALLEL_POINT_COUNT = 16384;
+	
 	/** The point size to use when none is specified. */
 	protected static final Double DEFAULT_POINT_SIZE = 10d;
 	
+	/**
+	 * The number of points drawn per point-sized area of the screen covered by
+	 * the grid, in level-of-detail mode.
+	 */
+	protected static final double LOD_POINTS_PER_POINT_AREA = 2;
+	
+	/** The fewest points of a chunk drawn in level-of-detail mode. */
+	protected static final int MIN_LOD_POINT_COUNT = 256;
+	
+	/** The number of consecutive points in a chunk. */
+	protected static final int CHUNK_POINT_COUNT = 16384;
+	
+	/**
+	 * The projected diameter, in pixels, below which a chunk is neither
+	 * regenerated nor drawn.
+	 */
+	protected static final double MIN_CHUNK_PIXEL_SIZE = 1;
+	
+	/**
+	 * The longest time, in milliseconds, the previous points are drawn while
+	 * new points are computed in the background, when none is specified.
+	 */
+	protected static final long DEFAULT_MAX_STALENESS = 250;
+	
+	/** The worker thread that regenerates the points of every grid in the background. */
+	protected static final ExecutorService REGENERATION_EXECUTOR = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, ColorizedPointGrid.class.getSimpleName() + "-Regeneration");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.NORM_PRIORITY - 1);
+			return thread;
+		}
+	});
+	
 	/** The color to use when none is specified */
 	protected static final Color DEFAULT_POINT_COLOR = Color.YELLOW;
 	
 	/** The highlight color to use when none is specified */
 	protected static final Color DEFAULT_HIGHLIGHT_POINT_COLOR = Color.WHITE;
 	
-	/** The default geometry regeneration interval, in milliseconds. */
+	/**
+	 * The default geometry regeneration interval, in milliseconds.
+	 * 
+	 * @deprecated See getGeometryRegenerationInterval().
+	 */
+	@Deprecated
 	protected static final long DEFAULT_GEOMETRY_GENERATION_INTERVAL = 5000;
 	
 	/** The attributes used if attributes are not specified. */
@@ -111,9 +188,17 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	
 	protected List<Position> corners;
 	
-	protected Iterable<? extends Position> positions;
+	/** Latitude of each point, in degrees. */
+	protected double[] latitudes;
+	
+	/** Longitude of each point, in degrees. */
+	protected double[] longitudes;
 	
-	protected List<Color> colors;
+	/** Altitude of each point, in meters. */
+	protected double[] altitudes;
+	
+	/** Packed ARGB color of each point, or null to use the point color. */
+	protected int[] colors;
 	
 	protected int numPositions;
 	
@@ -127,6 +212,8 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	
 	protected boolean applyVerticalExaggeration = true;
 	
+	/** @deprecated See getGeometryRegenerationInterval(). */
+	@Deprecated
 	protected long geometryRegenerationInterval = DEFAULT_GEOMETRY_GENERATION_INTERVAL;
 	
 	protected Attributes normalAttrs;
@@ -142,7 +229,8 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	
 	protected FloatBuffer currentPoints;
 	
-	protected FloatBuffer currentColors;
+	/** Colors of the points as packed RGBA bytes, built when the colors are set. */
+	protected ByteBuffer currentColors;
 	
 	protected PickSupport pickSupport = new PickSupport();
 	
@@ -153,6 +241,80 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	
 	protected double previousExaggeration = -1;
 	
+	/** True when the positions changed since the geometry was computed. */
+	protected boolean geometryChanged = true;
+	
+	/** Ranges of points whose positions changed since the last frame. */
+	protected final DirtyIndexRanges dirtyPositions = new DirtyIndexRanges();
+	
+	/** Ranges of points whose colors changed since the last frame. */
+	protected final DirtyIndexRanges dirtyColors = new DirtyIndexRanges();
+	
+	/** Incremented whenever the points of the vertex buffer change. */
+	protected long pointsVersion = 0;
+	
+	/** True to pick through a screen-space index of the points. */
+	protected boolean cpuPickingEnabled = false;
+	
+	/** The screen-space index of the points, built on the first CPU pick. */
+	protected ScreenPointIndex screenPointIndex;
+	
+	/** True to draw only as many points as the screen area of the grid needs. */
+	protected boolean lodEnabled = false;
+	
+	/** The point indices in level-of-detail order, built on the first draw. */
+	protected IntBuffer lodIndices;
+	
+	/** The chunks of consecutive points, created when the positions are set. */
+	protected List<Chunk> chunks = new ArrayList<Chunk>();
+	
+	/**
+	 * The terrain elevation under each point, vertically exaggerated, or NaN
+	 * until read from the terrain. Used unless the altitude mode is ABSOLUTE.
+	 */
+	protected float[] terrainElevations;
+	
+	/** Ranges of points whose altitudes alone changed since the last frame. */
+	protected final DirtyIndexRanges dirtyAltitudes = new DirtyIndexRanges();
+	
+	/**
+	 * Guards the staged positions and colors, and the copies from them into
+	 * the arrays read by the rendering thread.
+	 */
+	protected final Object updateLock = new Object();
+	
+	/* Guarded by updateLock */
+	protected double[] stagedLatitudes;
+	
+	/* Guarded by updateLock */
+	protected double[] stagedLongitudes;
+	
+	/* Guarded by updateLock */
+	protected double[] stagedAltitudes;
+	
+	/* Guarded by updateLock */
+	protected int[] stagedColors;
+	
+	/** True to regenerate chunks in the background, see setAsyncRegenerationEnabled(). */
+	protected boolean asyncRegenerationEnabled = false;
+	
+	protected long maxStaleness = DEFAULT_MAX_STALENESS;
+	
+	/** Incremented whenever the vertex buffer is replaced by one of another layout. */
+	protected long geometryGeneration = 0;
+	
+	/** The spare vertex buffer, filled by the next background regeneration. */
+	protected FloatBuffer backPoints;
+	
+	/** The background regeneration in progress, or null. */
+	protected Future<?> regenerationJob;
+	
+	/** The time, in milliseconds, the background regeneration was started. */
+	protected long regenerationStartTime;
+	
+	/** The points of the last background regeneration, until taken by the render thread. */
+	protected final AtomicReference<RegeneratedPoints> publishedPoints = new AtomicReference<RegeneratedPoints>();
+
 	protected long visGeomRegenFrame = -1;
 	
 	public ColorizedPointGrid() {
@@ -167,7 +329,29 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	public ColorizedPointGrid(List<Position> corners, Iterable<? extends Position> positions, List<Color> colors, Integer numPositions) {
 		this.corners = corners;
 		this.setPositions(positions, numPositions);
-		this.colors = colors;
+		this.setColors(colors);
+	}
+	
+	/**
+	 * Creates a grid from primitive arrays. The arrays are used as given, not
+	 * copied.
+	 * 
+	 * @param corners
+	 * @param latitudes
+	 *            latitude of each point, in degrees
+	 * @param longitudes
+	 *            longitude of each point, in degrees
+	 * @param altitudes
+	 *            altitude of each point, in meters
+	 * @param colors
+	 *            packed ARGB color of each point, may be null
+	 * @param numPositions
+	 *            the number of points, at most the length of each array
+	 */
+	public ColorizedPointGrid(List<Position> corners, double[] latitudes, double[] longitudes, double[] altitudes, int[] colors, int numPositions) {
+		this.corners = corners;
+		this.setPositions(latitudes, longitudes, altitudes, numPositions);
+		this.setColors(colors);
 	}
 	
 	public List<Position> getCorners() {
@@ -176,28 +360,341 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	
 	public void setCorners(List<Position> corners) {
 		this.corners = corners;
+		this.geometryChanged = true;
 	}
 	
 	public int getNumPositions() {
 		return this.numPositions;
 	}
 	
+	/**
+	 * Provides the positions of the points. The positions are created as they
+	 * are iterated.
+	 * 
+	 * @return
+	 */
 	public Iterable<? extends Position> getPositions() {
-		return this.positions;
+		return new Iterable<Position>() {
+			
+			@Override
+			public Iterator<Position> iterator() {
+				return new Iterator<Position>() {
+					
+					private int index = 0;
+					
+					@Override
+					public boolean hasNext() {
+						return this.index < numPositions;
+					}
+					
+					@Override
+					public Position next() {
+						if (!this.hasNext())
+							throw new NoSuchElementException();
+						return getPosition(this.index++);
+					}
+					
+					@Override
+					public void remove() {
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Provides the position of a point.
+	 * 
+	 * @param index
+	 * @return
+	 */
+	public Position getPosition(int index) {
+		return Position.fromDegrees(this.latitudes[index], this.longitudes[index], this.altitudes[index]);
 	}
 	
+	/**
+	 * Sets the positions, copying them into the primitive arrays of the grid.
+	 * 
+	 * @param positions
+	 * @param numPositions
+	 *            the number of positions, or null to count them
+	 */
 	public void setPositions(Iterable<? extends Position> positions, Integer numPositions) {
 		if (numPositions == null) {
-			this.numPositions = 0;
-			Iterator<? extends Position> posIter = positions.iterator();
-			while (posIter.hasNext()) {
-				++this.numPositions;
+			numPositions = 0;
+			for (Iterator<? extends Position> posIter = positions.iterator(); posIter.hasNext(); posIter.next()) {
+				++numPositions;
 			}
-		} else {
+		}
+		
+		double[] latitudes = new double[numPositions];
+		double[] longitudes = new double[numPositions];
+		double[] altitudes = new double[numPositions];
+		int index = 0;
+		for (Iterator<? extends Position> posIter = positions.iterator(); posIter.hasNext() && index < numPositions; index++) {
+			Position position = posIter.next();
+			latitudes[index] = position.getLatitude().degrees;
+			longitudes[index] = position.getLongitude().degrees;
+			altitudes[index] = position.getAltitude();
+		}
+		
+		this.setPositions(latitudes, longitudes, altitudes, index);
+	}
+	
+	/**
+	 * Sets the positions from primitive arrays. The arrays are used as given,
+	 * not copied.
+	 * 
+	 * @param latitudes
+	 *            latitude of each point, in degrees
+	 * @param longitudes
+	 *            longitude of each point, in degrees
+	 * @param altitudes
+	 *            altitude of each point, in meters
+	 * @param numPositions
+	 *            the number of points, at most the length of each array
+	 */
+	public void setPositions(double[] latitudes, double[] longitudes, double[] altitudes, int numPositions) {
+		if (latitudes == null || longitudes == null || altitudes == null) {
+			String msg = Logging.getMessage("nullValue.ArrayIsNull");
+			Logging.logger().severe(msg);
+			throw new IllegalArgumentException(msg);
+		}
+		if (numPositions < 0 || numPositions > latitudes.length || numPositions > longitudes.length || numPositions > altitudes.length) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", "numPositions=" + numPositions);
+			Logging.logger().severe(msg);
+			throw new IllegalArgumentException(msg);
+		}
+		
+		synchronized (this.updateLock) {
+			this.stagedLatitudes = null;
+			this.stagedLongitudes = null;
+			this.stagedAltitudes = null;
+			this.dirtyPositions.clear();
+			this.dirtyAltitudes.clear();
+			this.latitudes = latitudes;
+			this.longitudes = longitudes;
+			this.altitudes = altitudes;
 			this.numPositions = numPositions;
+			this.geometryChanged = true;
+		}
+	}
+	
+	/**
+	 * Changes the positions of a range of points. The positions are copied
+	 * into a staging copy of the arrays of the grid, and on the next frame the
+	 * rendering thread copies them into the arrays of the grid and recomputes
+	 * only the points of the range. This may be called from any thread: the
+	 * arrays given to the grid must not be written in place once set.
+	 * <p>
+	 * The staging copy is allocated on the first update, and holds as many
+	 * positions as the grid.
+	 * 
+	 * @param latitudes
+	 *            latitudes in degrees
+	 * @param longitudes
+	 *            longitudes in degrees
+	 * @param altitudes
+	 *            altitudes in meters
+	 * @param offset
+	 *            index in the arrays of the first position
+	 * @param index
+	 *            the first point to change
+	 * @param count
+	 *            the number of points to change
+	 */
+	public void updatePositions(double[] latitudes, double[] longitudes, double[] altitudes, int offset, int index, int count) {
+		synchronized (this.updateLock) {
+			this.checkRange(this.numPositions, index, count);
+			this.stagePositions();
+			System.arraycopy(latitudes, offset, this.stagedLatitudes, index, count);
+			System.arraycopy(longitudes, offset, this.stagedLongitudes, index, count);
+			System.arraycopy(altitudes, offset, this.stagedAltitudes, index, count);
+			this.dirtyPositions.add(index, index + count);
+		}
+	}
+	
+	/**
+	 * Changes the altitudes of a range of points, with the latitudes and
+	 * longitudes unchanged. The terrain elevations cached for the points are
+	 * kept. As with updatePositions(), the altitudes are staged and copied into
+	 * the grid by the rendering thread on the next frame.
+	 * 
+	 * @param altitudes
+	 *            altitudes in meters
+	 * @param offset
+	 *            index in altitudes of the first altitude
+	 * @param index
+	 *            the first point to change
+	 * @param count
+	 *            the number of points to change
+	 */
+	public void updateAltitudes(double[] altitudes, int offset, int index, int count) {
+		synchronized (this.updateLock) {
+			this.checkRange(this.numPositions, index, count);
+			this.stagePositions();
+			System.arraycopy(altitudes, offset, this.stagedAltitudes, index, count);
+			this.dirtyAltitudes.add(index, index + count);
+		}
+	}
+	
+	// Allocates the staging copy of the positions. Only the rendering thread
+	// writes the arrays of the grid, under the lock, so the copy equals them
+	// outside of the staged ranges, and ranges joined by DirtyIndexRanges
+	// copy back unchanged positions between them.
+	protected void stagePositions() {
+		if (this.stagedLatitudes == null) {
+			this.stagedLatitudes = Arrays.copyOf(this.latitudes, this.numPositions);
+			this.stagedLongitudes = Arrays.copyOf(this.longitudes, this.numPositions);
+			this.stagedAltitudes = Arrays.copyOf(this.altitudes, this.numPositions);
+		}
+	}
+	
+	/**
+	 * Copies the staged positions into the arrays of the grid. Called by the
+	 * rendering thread.
+	 * 
+	 * @return the start and end pairs of the points whose positions changed
+	 */
+	protected int[] takeUpdatedPositions() {
+		synchronized (this.updateLock) {
+			int[] ranges = this.dirtyPositions.drain();
+			for (int index = 0; index < ranges.length; index += 2) {
+				int start = ranges[index];
+				int count = Math.min(ranges[index + 1], this.numPositions) - start;
+				System.arraycopy(this.stagedLatitudes, start, this.latitudes, start, count);
+				System.arraycopy(this.stagedLongitudes, start, this.longitudes, start, count);
+				System.arraycopy(this.stagedAltitudes, start, this.altitudes, start, count);
+			}
+			return ranges;
+		}
+	}
+	
+	/**
+	 * Copies the staged altitudes into the altitude array of the grid. Called
+	 * by the rendering thread.
+	 * 
+	 * @return the start and end pairs of the points whose altitudes alone
+	 *         changed
+	 */
+	protected int[] takeUpdatedAltitudes() {
+		synchronized (this.updateLock) {
+			int[] ranges = this.dirtyAltitudes.drain();
+			for (int index = 0; index < ranges.length; index += 2) {
+				int start = ranges[index];
+				System.arraycopy(this.stagedAltitudes, start, this.altitudes, start, Math.min(ranges[index + 1], this.numPositions) - start);
+			}
+			return ranges;
+		}
+	}
+	
+	/**
+	 * Provides the packed ARGB color of each point, or null if the points use
+	 * the point color of the attributes.
+	 * 
+	 * @return
+	 */
+	public int[] getColors() {
+		return this.colors;
+	}
+	
+	/**
+	 * Sets the packed ARGB color (see {@link Color#getRGB()}) of each point.
+	 * The array is used as given, not copied.
+	 * 
+	 * @param colors
+	 *            at least getNumPositions() colors, or null to use the point
+	 *            color of the attributes
+	 */
+	public void setColors(int[] colors) {
+		synchronized (this.updateLock) {
+			this.stagedColors = null;
+			this.dirtyColors.clear();
+			this.colors = colors;
+			this.currentColors = this.computeGridPointColors(colors);
+		}
+	}
+	
+	/**
+	 * Changes the colors of a range of points. The colors are copied into a
+	 * staging copy of the packed ARGB array of the grid, and on the next frame
+	 * the rendering thread copies them into the array of the grid and rewrites
+	 * only the range of the RGBA buffer drawn by OpenGL. This may be called
+	 * from any thread: the array given to the grid must not be written in
+	 * place once set.
+	 * 
+	 * @param colors
+	 *            packed ARGB colors (see {@link Color#getRGB()})
+	 * @param colorsOffset
+	 *            index in colors of the first color
+	 * @param index
+	 *            the first point to change
+	 * @param count
+	 *            the number of points to change
+	 */
+	public void updateColors(int[] colors, int colorsOffset, int index, int count) {
+		synchronized (this.updateLock) {
+			if (this.colors == null || this.currentColors == null) {
+				String msg = Logging.getMessage("nullValue.ArrayIsNull");
+				Logging.logger().severe(msg);
+				throw new IllegalStateException(msg);
+			}
+			this.checkRange(this.colors.length, index, count);
+			
+			// The staging copy equals the colors of the grid outside of the
+			// staged ranges, see stagePositions()
+			if (this.stagedColors == null)
+				this.stagedColors = this.colors.clone();
+			System.arraycopy(colors, colorsOffset, this.stagedColors, index, count);
+			this.dirtyColors.add(index, index + count);
+		}
+	}
+	
+	/**
+	 * Copies the staged colors into the packed ARGB array of the grid. Called
+	 * by the rendering thread.
+	 * 
+	 * @return the start and end pairs of the points whose colors changed
+	 */
+	protected int[] takeUpdatedColors() {
+		synchronized (this.updateLock) {
+			int[] ranges = this.dirtyColors.drain();
+			for (int index = 0; index < ranges.length; index += 2) {
+				int start = ranges[index];
+				System.arraycopy(this.stagedColors, start, this.colors, start, Math.min(ranges[index + 1], this.colors.length) - start);
+			}
+			return ranges;
+		}
+	}
+	
+	// Checks that a range of points lies within a length
+	protected void checkRange(int length, int index, int count) {
+		if (index < 0 || count < 0 || index + count > length) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", "index=" + index + ", count=" + count);
+			Logging.logger().severe(msg);
+			throw new IllegalArgumentException(msg);
+		}
+	}
+	
+	/**
+	 * Sets the color of each point, copying them into a packed ARGB array.
+	 * 
+	 * @param colors
+	 *            the color of each point, or null to use the point color of the
+	 *            attributes
+	 */
+	public void setColors(List<Color> colors) {
+		if (colors == null) {
+			this.setColors((int[]) null);
+			return;
 		}
 		
-		this.positions = positions;
+		int[] argb = new int[colors.size()];
+		for (int index = 0; index < argb.length; index++) {
+			argb[index] = colors.get(index).getRGB();
+		}
+		this.setColors(argb);
 	}
 	
 	/** {@inheritDoc} */
@@ -242,6 +739,98 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 		this.applyVerticalExaggeration = applyVerticalExaggeration;
 	}
 	
+	public boolean isCpuPickingEnabled() {
+		return cpuPickingEnabled;
+	}
+	
+	/**
+	 * Sets whether picks look up the points near the pick point in a
+	 * screen-space index instead of testing every point. The index is built
+	 * on the CPU once per view and change of the points, and the candidates it
+	 * returns are tested and drawn for picking as without the index, so the
+	 * picked position is the same.
+	 * 
+	 * @param cpuPickingEnabled
+	 */
+	public void setCpuPickingEnabled(boolean cpuPickingEnabled) {
+		this.cpuPickingEnabled = cpuPickingEnabled;
+		if (!cpuPickingEnabled)
+			this.screenPointIndex = null;
+	}
+	
+	public boolean isLodEnabled() {
+		return lodEnabled;
+	}
+	
+	/**
+	 * Sets whether to draw a level of detail of the points. The points of each
+	 * chunk are ordered once so that every prefix of the order is spread
+	 * evenly over the chunk, and each frame draws the prefix that fills the
+	 * screen area of the chunk at its current distance, at a few points per
+	 * point size. Zoomed out, only a small fraction of the points is
+	 * submitted. Picking tests the same points, so a point that is not drawn
+	 * cannot be picked.
+	 * 
+	 * @param lodEnabled
+	 */
+	public void setLodEnabled(boolean lodEnabled) {
+		this.lodEnabled = lodEnabled;
+		if (!lodEnabled)
+			this.lodIndices = null;
+	}
+	
+	/**
+	 * Returns whether chunks are regenerated in the background, see
+	 * setAsyncRegenerationEnabled().
+	 * 
+	 * @return true if chunks are regenerated on a worker thread
+	 */
+	public boolean isAsyncRegenerationEnabled() {
+		return asyncRegenerationEnabled;
+	}
+	
+	/**
+	 * Sets whether chunks are regenerated in the background. The render thread
+	 * then reads the terrain elevations it needs, takes a snapshot of them, of
+	 * the positions of the chunks and of the globe and vertical exaggeration,
+	 * and hands it to a worker thread that fills a back buffer. The previous
+	 * points are drawn until the back buffer is published and swapped in, for
+	 * at most getMaxStaleness() milliseconds, after which the render thread
+	 * waits for it. Changed positions invalidate their chunks, which are then
+	 * regenerated in the background like any other stale chunk, so the render
+	 * thread never converts points. On a globe other than an ellipsoid, chunks
+	 * are regenerated on the render thread.
+	 * 
+	 * @param asyncRegenerationEnabled
+	 */
+	public void setAsyncRegenerationEnabled(boolean asyncRegenerationEnabled) {
+		this.asyncRegenerationEnabled = asyncRegenerationEnabled;
+	}
+	
+	public long getMaxStaleness() {
+		return maxStaleness;
+	}
+	
+	/**
+	 * Sets the longest time the previous points are drawn while new points are
+	 * computed in the background.
+	 * 
+	 * @param maxStaleness
+	 *            in milliseconds, 0 to wait for every background regeneration
+	 */
+	public void setMaxStaleness(long maxStaleness) {
+		this.maxStaleness = maxStaleness;
+	}
+	
+	/**
+	 * Provides the geometry regeneration interval.
+	 * 
+	 * @return the interval, which no longer has any effect
+	 * @deprecated Points are no longer regenerated on an interval: the terrain
+	 *             under each chunk is tracked through the surface geometry
+	 *             instead (see computeTerrainSignature()).
+	 */
+	@Deprecated
 	public long getGeometryRegenerationInterval() {
 		return geometryRegenerationInterval;
 	}
@@ -267,10 +856,7 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	}
 	
 	protected boolean mustRegenerateGeometry(DrawContext dc) {
-		if (this.currentPoints == null || dc.getVerticalExaggeration() != this.previousExaggeration)
-			return true;
-		
-		return this.getAltitudeMode() != WorldWind.ABSOLUTE && this.frameID - this.visGeomRegenFrame > this.getGeometryRegenerationInterval();
+		return this.currentPoints == null || this.geometryChanged || dc.getVerticalExaggeration() != this.previousExaggeration;
 	}
 	
 	protected void determineActiveAttributes() {
@@ -429,24 +1015,59 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	protected void makeOrderedRenderable(DrawContext dc) {
 		// Determine whether to queue an ordered renderable for the grid.
 		
+		// Rewrite the colors that changed
+		if (this.currentColors != null && !this.dirtyColors.isEmpty())
+			this.updateGridPointColors(this.takeUpdatedColors());
+		
 		// Re-use values already calculated this frame.
 		if (this.mustRegenerateGeometry(dc)) {
 			this.extent = this.computeExtentAndEyeDistance(dc);
 			if (!this.intersectsFrustum(dc))
 				return;
 			
-			this.currentPoints = this.computeGridPoints(dc, this.currentPoints);
-			this.currentColors = this.computeGridPointColors(dc, this.currentColors);
-			if (this.currentPoints == null || this.currentPoints.limit() == 0)
+			// Every chunk is recomputed when next visible, including the
+			// points marked dirty
+			if (this.geometryChanged || this.currentPoints == null) {
+				this.takeUpdatedPositions();
+				this.takeUpdatedAltitudes();
+				this.geometryGeneration++;
+				this.backPoints = null;
+				this.currentPoints = this.allocateGridPoints(this.currentPoints);
+				this.terrainElevations = new float[this.numPositions];
+				Arrays.fill(this.terrainElevations, Float.NaN);
+				this.chunks = this.createChunks();
+			} else {
+				for (Chunk chunk : this.chunks) {
+					chunk.invalidate();
+				}
+			}
+			if (this.currentPoints.limit() == 0)
 				return;
 			
 			this.determineActiveAttributes();
 			
 			this.visGeomRegenFrame = dc.getFrameTimeStamp();
 			this.previousExaggeration = dc.getVerticalExaggeration();
+			this.geometryChanged = false;
+		} else if (!this.dirtyPositions.isEmpty() || !this.dirtyAltitudes.isEmpty()) {
+			// In the background, changed chunks are regenerated from a snapshot
+			// of their positions, so the changes apply at once. Otherwise they
+			// wait for a background regeneration in progress to be swapped in.
+			boolean isAsync = this.isAsyncRegenerationEnabled() && isEllipsoidal(dc.getGlobe());
+			if (isAsync || this.regenerationJob == null) {
+				// Moved points need the terrain under their new location
+				int[] positionRanges = this.takeUpdatedPositions();
+				for (int index = 0; index < positionRanges.length; index += 2) {
+					Arrays.fill(this.terrainElevations, positionRanges[index], Math.min(positionRanges[index + 1], this.numPositions), Float.NaN);
+				}
+				this.updateDirtyPoints(dc, positionRanges, isAsync);
+				this.updateDirtyPoints(dc, this.takeUpdatedAltitudes(), isAsync);
+				if (!isAsync)
+					this.pointsVersion++;
+			}
 		}
 		
-		if (this.intersectsFrustum(dc)) {
+		if (this.intersectsFrustum(dc) && this.updateChunks(dc)) {
 			if (dc.isPickingMode())
 				this.pickLayer = dc.getCurrentLayer();
 			
@@ -455,66 +1076,368 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 	}
 	
 	/**
-	 * Draws the path as an ordered renderable.
+	 * Recomputes the bounds of the chunks that changed, and either the points
+	 * that changed in chunks that are up to date, or, when regenerating in the
+	 * background, invalidates the chunks so the points are regenerated on the
+	 * worker thread once drawn.
 	 * 
 	 * @param dc
-	 *            the current draw context.
+	 * @param ranges
+	 *            start and end pairs of points
+	 * @param isAsync
+	 *            true to invalidate the chunks rather than recompute points
 	 */
-	protected void drawOrderedRenderable(DrawContext dc) {
-		if (this.currentPoints == null) // verify that we have something to draw
-			return;
-		
-		this.beginDrawing(dc);
-		try {
-			this.doDrawOrderedRenderable(dc);
-		} finally {
-			this.endDrawing(dc);
+	protected void updateDirtyPoints(DrawContext dc, int[] ranges, boolean isAsync) {
+		for (int index = 0; index < ranges.length; index += 2) {
+			int start = ranges[index];
+			int end = Math.min(ranges[index + 1], this.numPositions);
+			for (int chunkIndex = start / CHUNK_POINT_COUNT; chunkIndex < this.chunks.size() && chunkIndex * CHUNK_POINT_COUNT < end; chunkIndex++) {
+				Chunk chunk = this.chunks.get(chunkIndex);
+				chunk.computeBounds(this.latitudes, this.longitudes, this.altitudes);
+				if (isAsync)
+					chunk.invalidate();
+				else if (chunk.pointsValid)
+					this.computeGridPoints(dc, this.currentPoints, Math.max(start, chunk.start), Math.min(end, chunk.end));
+			}
 		}
 	}
 	
 	/**
-	 * Establish the OpenGL state needed to draw Paths.
+	 * Splits the points into chunks of CHUNK_POINT_COUNT consecutive points,
+	 * with the bounds of their positions.
+	 * 
+	 * @return
+	 */
+	protected List<Chunk> createChunks() {
+		List<Chunk> chunkList = new ArrayList<Chunk>((this.numPositions + CHUNK_POINT_COUNT - 1) / CHUNK_POINT_COUNT);
+		for (int start = 0; start < this.numPositions; start += CHUNK_POINT_COUNT) {
+			Chunk chunk = new Chunk(start, Math.min(start + CHUNK_POINT_COUNT, this.numPositions));
+			chunk.computeBounds(this.latitudes, this.longitudes, this.altitudes);
+			chunkList.add(chunk);
+		}
+		return chunkList;
+	}
+	
+	/**
+	 * Determines which chunks are drawn this frame, those that intersect the
+	 * frustum and are not too small on screen, and recomputes the points of
+	 * the drawn chunks that are out of date. Chunks that are not drawn are not
+	 * recomputed.
 	 * 
 	 * @param dc
-	 *            the current draw context.
+	 * @return true if any chunk is drawn
 	 */
-	protected void beginDrawing(DrawContext dc) {
-		GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2
-		                              // compatibility.
-		
-		int attrMask = GL2.GL_POINT_BIT | GL2.GL_CURRENT_BIT // for current
-		                                                     // color
-		        | GL2.GL_COLOR_BUFFER_BIT // for alpha test func and ref, and
-		                                  // blend
-		        | GL2.GL_ENABLE_BIT; // for enable/disable changes
+	protected boolean updateChunks(DrawContext dc) {
+		this.takePublishedPoints();
 		
-		if (dc.isPickingMode())
-			attrMask |= GL2.GL_DEPTH_BUFFER_BIT // for depth test, depth mask
-			                                    // and depth func
-			        | GL2.GL_TRANSFORM_BIT // for modelview and perspective
-			        | GL2.GL_VIEWPORT_BIT // for depth range
-			        | GL2.GL_DEPTH_BUFFER_BIT; // for depth func
+		boolean isAnyDrawn = false;
+		boolean isRegenerated = false;
+		boolean isAsync = this.isAsyncRegenerationEnabled() && isEllipsoidal(dc.getGlobe());
+		List<Chunk> staleChunks = new ArrayList<Chunk>();
+		for (Chunk chunk : this.chunks) {
+			if (chunk.extent == null)
+				chunk.extent = this.computeChunkExtent(dc, chunk);
 			
-		gl.glPushAttrib(attrMask);
+			chunk.drawn = chunk.extent != null && this.intersectsFrustum(dc, chunk.extent) && this.computePixelSize(dc, chunk.extent) >= MIN_CHUNK_PIXEL_SIZE;
+			
+			// Read the terrain again where the surface geometry under the
+			// chunk changed
+			if (chunk.drawn && this.getAltitudeMode() != WorldWind.ABSOLUTE) {
+				long terrainSignature = this.computeTerrainSignature(dc, chunk.sector);
+				if (terrainSignature != chunk.terrainSignature) {
+					Arrays.fill(this.terrainElevations, chunk.start, chunk.end, Float.NaN);
+					chunk.terrainSignature = terrainSignature;
+					chunk.invalidate();
+					chunk.extent = this.computeChunkExtent(dc, chunk);
+				}
+			}
+			
+			if (chunk.drawn && !chunk.pointsValid) {
+				if (isAsync) {
+					staleChunks.add(chunk);
+				} else {
+					this.computeGridPoints(dc, this.currentPoints, chunk.start, chunk.end);
+					chunk.pointsValid = true;
+					chunk.pointsInBuffer = true;
+					isRegenerated = true;
+				}
+			}
+		}
+		if (isRegenerated)
+			this.pointsVersion++;
 		
-		if (!dc.isPickingMode()) {
-			gl.glEnable(GL.GL_BLEND);
-			OGLUtil.applyBlending(gl, false);
+		if (!staleChunks.isEmpty())
+			this.regenerateInBackground(dc, staleChunks);
+		
+		// Only chunks with points in the buffer, if out of date, are drawn
+		for (Chunk chunk : this.chunks) {
+			chunk.drawn &= chunk.pointsInBuffer;
+			isAnyDrawn |= chunk.drawn;
 		}
+		
+		return isAnyDrawn;
 	}
 	
 	/**
-	 * Pop the state set in beginDrawing.
+	 * Starts regenerating chunks on the worker thread, unless a regeneration
+	 * is in progress. If the one in progress has run for longer than
+	 * getMaxStaleness(), waits for it and swaps its points in.
 	 * 
 	 * @param dc
-	 *            the current draw context.
+	 * @param staleChunks
+	 *            the drawn chunks whose points are out of date
 	 */
-	protected void endDrawing(DrawContext dc) {
-		GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2
-		                              // compatibility.
-		gl.glPopAttrib();
-	}
-	
+	protected void regenerateInBackground(DrawContext dc, List<Chunk> staleChunks) {
+		if (this.regenerationJob != null) {
+			if (System.currentTimeMillis() - this.regenerationStartTime <= this.getMaxStaleness())
+				return;
+			
+			try {
+				this.regenerationJob.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				Logging.logger().log(Level.SEVERE, "Unable to regenerate points of " + this, e.getCause());
+				this.regenerationJob = null;
+				return;
+			}
+			this.takePublishedPoints();
+			return;
+		}
+		
+		// Snapshot of the terrain, the globe and the vertical exaggeration
+		final EllipsoidalGlobe globe = (EllipsoidalGlobe) dc.getGlobe();
+		final boolean isOverTerrain = this.getAltitudeMode() != WorldWind.ABSOLUTE;
+		final double altitudeScale;
+		if (!isOverTerrain) {
+			altitudeScale = this.applyVerticalExaggeration ? dc.getVerticalExaggeration() : 1;
+		} else {
+			for (Chunk chunk : staleChunks) {
+				this.readTerrainElevations(dc, globe, chunk.start, chunk.end);
+			}
+			altitudeScale = this.getAltitudeMode() == WorldWind.CLAMP_TO_GROUND ? 0 : 1;
+		}
+		
+		// Snapshot of the positions of the stale chunks: updated positions are
+		// copied into the arrays of the grid while the worker runs
+		final long generation = this.geometryGeneration;
+		final int[] chunkIndices = new int[staleChunks.size()];
+		final int[] invalidationCounts = new int[staleChunks.size()];
+		final double[][] latitudeSlices = new double[staleChunks.size()][];
+		final double[][] longitudeSlices = new double[staleChunks.size()][];
+		final double[][] altitudeSlices = new double[staleChunks.size()][];
+		final float[][] baseElevationSlices = new float[staleChunks.size()][];
+		for (int index = 0; index < chunkIndices.length; index++) {
+			Chunk chunk = staleChunks.get(index);
+			chunkIndices[index] = chunk.start / CHUNK_POINT_COUNT;
+			invalidationCounts[index] = chunk.invalidationCount;
+			latitudeSlices[index] = Arrays.copyOfRange(this.latitudes, chunk.start, chunk.end);
+			longitudeSlices[index] = Arrays.copyOfRange(this.longitudes, chunk.start, chunk.end);
+			altitudeSlices[index] = Arrays.copyOfRange(this.altitudes, chunk.start, chunk.end);
+			if (isOverTerrain)
+				baseElevationSlices[index] = Arrays.copyOfRange(this.terrainElevations, chunk.start, chunk.end);
+		}
+		
+		// The front buffer is not written while the regeneration is in progress
+		final FloatBuffer front = this.currentPoints.duplicate();
+		front.position(0);
+		final FloatBuffer back = this.backPoints;
+		this.backPoints = null;
+		
+		this.regenerationStartTime = System.currentTimeMillis();
+		this.regenerationJob = REGENERATION_EXECUTOR.submit(new Runnable() {
+			
+			@Override
+			public void run() {
+				FloatBuffer points = back != null && back.capacity() == front.capacity() ? back : Buffers.newDirectFloatBuffer(front.capacity());
+				points.clear();
+				points.put(front);
+				points.flip();
+				
+				List<AbsolutePointsTask> taskList = new ArrayList<AbsolutePointsTask>(chunkIndices.length);
+				for (int index = 0; index < chunkIndices.length; index++) {
+					int start = chunkIndices[index] * CHUNK_POINT_COUNT;
+					int end = start + latitudeSlices[index].length;
+					AbsolutePointsTask task = new AbsolutePointsTask(globe, altitudeScale, latitudeSlices[index], longitudeSlices[index], altitudeSlices[index], baseElevationSlices[index], start, points, start, Math.min(end, points.limit() / 3));
+					ForkJoinPool.commonPool().execute(task);
+					taskList.add(task);
+				}
+				for (AbsolutePointsTask task : taskList) {
+					task.join();
+				}
+				
+				publishedPoints.set(new RegeneratedPoints(generation, points, chunkIndices, invalidationCounts));
+			}
+		});
+	}
+	
+	/**
+	 * Swaps in the points of a finished background regeneration, if any, and
+	 * marks its chunks up to date unless they were invalidated since. The
+	 * previous buffer becomes the back buffer of the next regeneration.
+	 */
+	protected void takePublishedPoints() {
+		RegeneratedPoints regeneratedPoints = this.publishedPoints.getAndSet(null);
+		if (regeneratedPoints == null)
+			return;
+		
+		this.regenerationJob = null;
+		if (regeneratedPoints.generation != this.geometryGeneration)
+			return;
+		
+		this.backPoints = this.currentPoints;
+		this.currentPoints = regeneratedPoints.points;
+		for (int index = 0; index < regeneratedPoints.chunkIndices.length; index++) {
+			Chunk chunk = this.chunks.get(regeneratedPoints.chunkIndices[index]);
+			chunk.pointsInBuffer = true;
+			if (chunk.invalidationCount == regeneratedPoints.invalidationCounts[index])
+				chunk.pointsValid = true;
+		}
+		this.pointsVersion++;
+	}
+	
+	/**
+	 * Computes a signature of the terrain under a sector: the sectors of the
+	 * surface geometry tiles that intersect it, which change as tiles of
+	 * another resolution are tessellated, and the vertical exaggeration. The
+	 * signature does not depend on the order of the tiles.
+	 * 
+	 * @param dc
+	 * @param sector
+	 * @return
+	 */
+	protected long computeTerrainSignature(DrawContext dc, Sector sector) {
+		long signature = Double.doubleToLongBits(dc.getVerticalExaggeration());
+		if (sector == null)
+			return signature;
+		
+		for (SectorGeometry tile : dc.getSurfaceGeometry()) {
+			if (tile.getSector().intersects(sector))
+				signature += 0x9E3779B97F4A7C15L * (tile.getSector().hashCode() | 1L);
+		}
+		return signature;
+	}
+	
+	/**
+	 * Computes the bounding box of a chunk from the sector and the altitude
+	 * range of its positions, over the terrain unless the altitude mode is
+	 * ABSOLUTE.
+	 * 
+	 * @param dc
+	 * @param chunk
+	 * @return
+	 */
+	protected Extent computeChunkExtent(DrawContext dc, Chunk chunk) {
+		if (chunk.sector == null)
+			return null;
+		
+		double exaggeration = dc.getVerticalExaggeration();
+		double minElevation;
+		double maxElevation;
+		if (this.getAltitudeMode() == WorldWind.ABSOLUTE) {
+			double scale = this.applyVerticalExaggeration ? exaggeration : 1;
+			minElevation = Math.min(scale * chunk.minAltitude, scale * chunk.maxAltitude);
+			maxElevation = Math.max(scale * chunk.minAltitude, scale * chunk.maxAltitude);
+		} else {
+			double[] terrainElevations = dc.getGlobe().getMinAndMaxElevations(chunk.sector);
+			double minAltitude = this.getAltitudeMode() == WorldWind.CLAMP_TO_GROUND ? 0 : chunk.minAltitude;
+			double maxAltitude = this.getAltitudeMode() == WorldWind.CLAMP_TO_GROUND ? 0 : chunk.maxAltitude;
+			minElevation = exaggeration * terrainElevations[0] + minAltitude;
+			maxElevation = exaggeration * terrainElevations[1] + maxAltitude;
+		}
+		
+		return Sector.computeBoundingBox(dc.getGlobe(), 1, chunk.sector, minElevation, maxElevation);
+	}
+	
+	/**
+	 * Determines whether an extent intersects the view frustum, or the pick
+	 * frustums when picking.
+	 * 
+	 * @param dc
+	 * @param extent
+	 * @return
+	 */
+	protected boolean intersectsFrustum(DrawContext dc, Extent extent) {
+		if (dc.isPickingMode())
+			return dc.getPickFrustums().intersectsAny(extent);
+		else
+			return dc.getView().getFrustumInModelCoordinates().intersects(extent);
+	}
+	
+	/**
+	 * Provides the projected diameter of an extent, in pixels.
+	 * 
+	 * @param dc
+	 * @param extent
+	 * @return
+	 */
+	protected double computePixelSize(DrawContext dc, Extent extent) {
+		double distance = Math.max(extent.getCenter().distanceTo3(dc.getView().getEyePoint()) - extent.getRadius(), 1);
+		return 2 * extent.getRadius() / dc.getView().computePixelSizeAtDistance(distance);
+	}
+	
+	/**
+	 * Draws the path as an ordered renderable.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 */
+	protected void drawOrderedRenderable(DrawContext dc) {
+		if (this.currentPoints == null) // verify that we have something to draw
+			return;
+		
+		this.beginDrawing(dc);
+		try {
+			this.doDrawOrderedRenderable(dc);
+		} finally {
+			this.endDrawing(dc);
+		}
+	}
+	
+	/**
+	 * Establish the OpenGL state needed to draw Paths.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 */
+	protected void beginDrawing(DrawContext dc) {
+		GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2
+		                              // compatibility.
+		
+		int attrMask = GL2.GL_POINT_BIT | GL2.GL_CURRENT_BIT // for current
+		                                                     // color
+		        | GL2.GL_COLOR_BUFFER_BIT // for alpha test func and ref, and
+		                                  // blend
+		        | GL2.GL_ENABLE_BIT; // for enable/disable changes
+		
+		if (dc.isPickingMode())
+			attrMask |= GL2.GL_DEPTH_BUFFER_BIT // for depth test, depth mask
+			                                    // and depth func
+			        | GL2.GL_TRANSFORM_BIT // for modelview and perspective
+			        | GL2.GL_VIEWPORT_BIT // for depth range
+			        | GL2.GL_DEPTH_BUFFER_BIT; // for depth func
+			
+		gl.glPushAttrib(attrMask);
+		
+		if (!dc.isPickingMode()) {
+			gl.glEnable(GL.GL_BLEND);
+			OGLUtil.applyBlending(gl, false);
+		}
+	}
+	
+	/**
+	 * Pop the state set in beginDrawing.
+	 * 
+	 * @param dc
+	 *            the current draw context.
+	 */
+	protected void endDrawing(DrawContext dc) {
+		GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2
+		                              // compatibility.
+		gl.glPopAttrib();
+	}
+	
 	/**
 	 * Draws the points as an ordered renderable.
 	 * 
@@ -549,34 +1472,43 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 			gl.glDepthMask(false);
 			gl.glDepthFunc(GL.GL_LESS);
 			
-			Iterator<? extends Position> posIter = this.positions.iterator();
-			
 			FloatBuffer points = this.currentPoints;
 			points.rewind();
 			gl.glBegin(GL2.GL_POINTS);
 			try {
-				while (points.hasRemaining()) {
-					Position position = posIter.next();
-					Vec4 pt = new Vec4(points.get(), points.get(), points.get());
-					
-					if (!dc.getView().getFrustumInModelCoordinates().contains(pt))
-						continue;
-					
-					Vec4 sp = dc.getView().project(pt);
-					
-					if (!dc.getPickFrustums().containsInAny(sp.x, sp.y))
-						continue;
-					
-					// Adjust depth of point to bring it slightly forward
-					double depth = sp.z - (8d * 0.00048875809d);
-					depth = depth < 0d ? 0d : (depth > 1d ? 1d : depth);
-					gl.glDepthRange(depth, depth);
-					
-					Color pickColor = dc.getUniquePickColor();
-					this.pickSupport.addPickableObject(pickColor.getRGB(), this, position);
-					gl.glColor3ub((byte) pickColor.getRed(), (byte) pickColor.getGreen(), (byte) pickColor.getBlue());
-					
-					gl.glVertex3d(sp.x, sp.y, 0);
+				// Only the points drawn are picked, the level-of-detail prefix
+				// of each chunk when the level of detail is enabled
+				IntBuffer lodIndices = this.isLodEnabled() ? this.getLodIndices() : null;
+				if (this.isCpuPickingEnabled()) {
+					// Only the points near the pick point are tested
+					int[] lastLodRanks = new int[this.chunks.size()];
+					Arrays.fill(lastLodRanks, -1);
+					for (int index : this.getPickCandidates(dc)) {
+						int chunkIndex = index / CHUNK_POINT_COUNT;
+						Chunk chunk = this.chunks.get(chunkIndex);
+						if (!chunk.drawn)
+							continue;
+						
+						if (lodIndices != null) {
+							if (lastLodRanks[chunkIndex] < 0)
+								lastLodRanks[chunkIndex] = this.computeLastLodRank(dc, chunk, lodIndices);
+							if (getLodRank(index - chunk.start, chunk.end - chunk.start) > lastLodRanks[chunkIndex])
+								continue;
+						}
+						this.pickPoint(dc, index, new Vec4(points.get(3 * index), points.get(3 * index + 1), points.get(3 * index + 2)));
+					}
+				} else {
+					for (Chunk chunk : this.chunks) {
+						if (!chunk.drawn)
+							continue;
+						
+						int pointCount = chunk.end - chunk.start;
+						int lodPointCount = this.computeDrawnPointCount(dc, chunk);
+						for (int order = 0; order < lodPointCount; order++) {
+							int index = lodPointCount < pointCount ? lodIndices.get(chunk.start + order) : chunk.start + order;
+							this.pickPoint(dc, index, new Vec4(points.get(3 * index), points.get(3 * index + 1), points.get(3 * index + 2)));
+						}
+					}
 				}
 			} finally {
 				gl.glEnd();
@@ -588,6 +1520,64 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 		}
 	}
 	
+	/**
+	 * Draws a point for picking, in a unique pick color, if it is within the
+	 * view and pick frustums.
+	 * 
+	 * @param dc
+	 * @param index
+	 *            the index of the point
+	 * @param pt
+	 *            the point in model coordinates
+	 */
+	protected void pickPoint(DrawContext dc, int index, Vec4 pt) {
+		if (!dc.getView().getFrustumInModelCoordinates().contains(pt))
+			return;
+		
+		Vec4 sp = dc.getView().project(pt);
+		
+		if (!dc.getPickFrustums().containsInAny(sp.x, sp.y))
+			return;
+		
+		GL2 gl = dc.getGL().getGL2();
+		
+		// Adjust depth of point to bring it slightly forward
+		double depth = sp.z - (8d * 0.00048875809d);
+		depth = depth < 0d ? 0d : (depth > 1d ? 1d : depth);
+		gl.glDepthRange(depth, depth);
+		
+		// Only candidates of the pick get a Position
+		Color pickColor = dc.getUniquePickColor();
+		this.pickSupport.addPickableObject(pickColor.getRGB(), this, this.getPosition(index));
+		gl.glColor3ub((byte) pickColor.getRed(), (byte) pickColor.getGreen(), (byte) pickColor.getBlue());
+		
+		gl.glVertex3d(sp.x, sp.y, 0);
+	}
+	
+	/**
+	 * Provides the indices of the points in buckets near the pick frustums,
+	 * ascending, rebuilding the screen-space index if the view or the points
+	 * changed.
+	 * 
+	 * @param dc
+	 * @return
+	 */
+	protected int[] getPickCandidates(DrawContext dc) {
+		View view = dc.getView();
+		Matrix modelviewProjection = view.getProjectionMatrix().multiply(view.getModelviewMatrix());
+		Rectangle viewport = view.getViewport();
+		if (this.screenPointIndex == null)
+			this.screenPointIndex = new ScreenPointIndex();
+		if (!this.screenPointIndex.isCurrent(modelviewProjection, viewport, this.pointsVersion))
+			this.screenPointIndex.build(this.currentPoints, this.currentPoints.limit() / 3, modelviewProjection, viewport, this.pointsVersion);
+		
+		List<Rectangle> screenRects = new ArrayList<Rectangle>(dc.getPickFrustums().size());
+		for (PickPointFrustum frustum : dc.getPickFrustums()) {
+			screenRects.add(frustum.getScreenRect());
+		}
+		return this.screenPointIndex.query(screenRects);
+	}
+	
 	protected void drawPoints(DrawContext dc) {
 		GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2
 		                              // compatibility.
@@ -598,11 +1588,24 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 		gl.glEnableClientState(GL2.GL_VERTEX_ARRAY);
 		if (currentColors != null) {
 			gl.glEnableClientState(GL2.GL_COLOR_ARRAY);
-			gl.glColorPointer(4, GL.GL_FLOAT, 0, this.currentColors.rewind());
+			gl.glColorPointer(4, GL.GL_UNSIGNED_BYTE, 0, this.currentColors.rewind());
 		}
 		dc.pushProjectionOffest(0.99);
 		gl.glVertexPointer(3, GL.GL_FLOAT, 0, this.currentPoints.rewind());
-		gl.glDrawArrays(GL.GL_POINTS, 0, this.currentPoints.limit() / 3);
+		IntBuffer lodIndices = this.isLodEnabled() ? this.getLodIndices() : null;
+		for (Chunk chunk : this.chunks) {
+			if (!chunk.drawn)
+				continue;
+			
+			int pointCount = chunk.end - chunk.start;
+			int lodPointCount = this.computeDrawnPointCount(dc, chunk);
+			if (lodPointCount < pointCount) {
+				lodIndices.position(chunk.start);
+				gl.glDrawElements(GL.GL_POINTS, lodPointCount, GL.GL_UNSIGNED_INT, lodIndices);
+			} else {
+				gl.glDrawArrays(GL.GL_POINTS, chunk.start, pointCount);
+			}
+		}
 		dc.popProjectionOffest();
 		gl.glPopClientAttrib();
 		
@@ -626,6 +1629,114 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 		}
 	}
 	
+	/**
+	 * Provides the number of points of a chunk to draw in level-of-detail
+	 * mode: a few points per point-sized area of the screen covered by the
+	 * chunk, where the covered area is that of its extent, bounded by the
+	 * viewport. The count is that of the drawn points in picking mode too, so
+	 * only the drawn points are picked.
+	 * 
+	 * @param dc
+	 * @param extent
+	 *            the extent of the chunk
+	 * @param pointCount
+	 *            the number of points of the chunk
+	 * @return
+	 */
+	protected int computeLodPointCount(DrawContext dc, Extent extent, int pointCount) {
+		double diameter = this.computePixelSize(dc, extent);
+		Rectangle viewport = dc.getView().getViewport();
+		double area = Math.min(Math.PI / 4 * diameter * diameter, (double) viewport.width * viewport.height);
+		double pointSize = this.computePointSize(dc, null, false);
+		double lodPointCount = Math.max(LOD_POINTS_PER_POINT_AREA * area / (pointSize * pointSize), MIN_LOD_POINT_COUNT);
+		return lodPointCount < pointCount ? (int) lodPointCount : pointCount;
+	}
+	
+	/**
+	 * Provides the number of points of a drawn chunk that are drawn: the
+	 * level-of-detail count when the level of detail is enabled, otherwise
+	 * every point.
+	 * 
+	 * @param dc
+	 * @param chunk
+	 * @return
+	 */
+	protected int computeDrawnPointCount(DrawContext dc, Chunk chunk) {
+		int pointCount = chunk.end - chunk.start;
+		return this.isLodEnabled() ? this.computeLodPointCount(dc, chunk.extent, pointCount) : pointCount;
+	}
+	
+	/**
+	 * Provides the rank (see getLodRank()) of the last point of a chunk drawn
+	 * in level-of-detail mode. A point of the chunk is drawn if and only if
+	 * its rank is at most this rank.
+	 * 
+	 * @param dc
+	 * @param chunk
+	 * @param lodIndices
+	 * @return
+	 */
+	protected int computeLastLodRank(DrawContext dc, Chunk chunk, IntBuffer lodIndices) {
+		int pointCount = chunk.end - chunk.start;
+		int lastOffset = lodIndices.get(chunk.start + this.computeDrawnPointCount(dc, chunk) - 1) - chunk.start;
+		return getLodRank(lastOffset, pointCount);
+	}
+	
+	/**
+	 * Provides the point indices in level-of-detail order within each chunk,
+	 * building them if the number of points changed.
+	 * 
+	 * @return
+	 */
+	protected IntBuffer getLodIndices() {
+		if (this.lodIndices == null || this.lodIndices.capacity() != this.numPositions) {
+			this.lodIndices = Buffers.newDirectIntBuffer(this.numPositions);
+			for (Chunk chunk : this.chunks) {
+				putLodOrder(this.lodIndices, chunk.start, chunk.end);
+			}
+		}
+		return this.lodIndices;
+	}
+	
+	/**
+	 * Puts the indices [start, end) in bit-reversal order: the first half of
+	 * the order takes every second index, the first quarter every fourth, and
+	 * so on, so every prefix is a stride of the range.
+	 * 
+	 * @param indices
+	 * @param start
+	 * @param end
+	 */
+	protected static void putLodOrder(IntBuffer indices, int start, int end) {
+		int count = end - start;
+		int bits = getLodBits(count);
+		for (int rank = 0; rank < 1 << bits; rank++) {
+			int offset = Integer.reverse(rank) >>> (32 - bits);
+			if (offset < count)
+				indices.put(start + offset);
+		}
+	}
+	
+	/**
+	 * Provides the bit-reversal rank of a point in the level-of-detail order
+	 * of its range: points come in the order of their ranks, so the points of
+	 * any prefix are those up to a rank.
+	 * 
+	 * @param offset
+	 *            the index of the point within its range
+	 * @param count
+	 *            the number of points of the range
+	 * @return
+	 */
+	protected static int getLodRank(int offset, int count) {
+		return Integer.reverse(offset) >>> (32 - getLodBits(count));
+	}
+	
+	// The number of bits of the offsets of a range of points
+	private static int getLodBits(int count) {
+		return 32 - Integer.numberOfLeadingZeros(Math.max(count - 1, 1));
+	}
+	
 	protected void setPointColor(DrawContext dc, Color color) {
 		if (color == null)
 			color = this.getActiveAttributes().getPointColor();
@@ -642,6 +1753,41 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 		GL2 gl = dc.getGL().getGL2(); // GL initialization checks for GL2
 		                              // compatibility.
 		
+		gl.glPointSize((float) this.computePointSize(dc, size));
+		
+		if (!dc.isPickingMode() && this.getActiveAttributes().isEnablePointSmoothing()) {
+			gl.glEnable(GL2.GL_POINT_SMOOTH);
+			gl.glHint(GL2.GL_POINT_SMOOTH_HINT, GL2.GL_NICEST);
+		}
+	}
+	
+	/**
+	 * Provides the point size in pixels, reduced with the eye altitude, or
+	 * doubled when picking.
+	 * 
+	 * @param dc
+	 * @param size
+	 *            the point size, or null for the size of the active
+	 *            attributes
+	 * @return
+	 */
+	protected double computePointSize(DrawContext dc, Double size) {
+		return this.computePointSize(dc, size, dc.isPickingMode());
+	}
+	
+	/**
+	 * Provides the point size in pixels, reduced with the eye altitude, or
+	 * doubled when picking.
+	 * 
+	 * @param dc
+	 * @param size
+	 *            the point size, or null for the size of the active
+	 *            attributes
+	 * @param isPicking
+	 *            true for the size of the points drawn for picking
+	 * @return
+	 */
+	protected double computePointSize(DrawContext dc, Double size, boolean isPicking) {
 		if (size == null)
 			size = this.getActiveAttributes().getPointSize();
 		
@@ -649,7 +1795,7 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 			size = DEFAULT_POINT_SIZE;
 		
 		double altitude = dc.getView().getEyePosition().getAltitude();
-		if (dc.isPickingMode()) {
+		if (isPicking) {
 			size *= 2; // makes points easier to pick
 		} else if (altitude > 100e3) {
 			if (altitude < 200e3)
@@ -664,12 +1810,7 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 				size = Math.max(0.1 * size, 1);
 		}
 		
-		gl.glPointSize(size.floatValue());
-		
-		if (!dc.isPickingMode() && this.getActiveAttributes().isEnablePointSmoothing()) {
-			gl.glEnable(GL2.GL_POINT_SMOOTH);
-			gl.glHint(GL2.GL_POINT_SMOOTH_HINT, GL2.GL_NICEST);
-		}
+		return size;
 	}
 	
 	/**
@@ -693,50 +1834,152 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 			return dc.getView().getFrustumInModelCoordinates().intersects(this.getExtent());
 	}
 	
-	protected FloatBuffer computeGridPoints(DrawContext dc, FloatBuffer coords) {
+	/**
+	 * Provides a buffer for the coordinates of the points, reusing the
+	 * current buffer if its size is close. The points are computed by chunk.
+	 * 
+	 * @param coords
+	 *            the current buffer, may be null
+	 * @return
+	 */
+	protected FloatBuffer allocateGridPoints(FloatBuffer coords) {
 		int numCoords = 3 * this.numPositions;
 		
 		if (coords == null || coords.capacity() < numCoords || coords.capacity() > 1.5 * numCoords)
 			coords = Buffers.newDirectFloatBuffer(numCoords);
 		coords.rewind();
+		coords.limit(numCoords);
 		
-		Iterator<? extends Position> posIter = this.positions.iterator();
+		return coords;
+	}
+	
+	/**
+	 * Computes the points [start, end) into their place in the buffer, point i
+	 * at coordinate 3 * i, without moving the position or limit of the buffer.
+	 * A point that cannot be computed, e.g. where the terrain is not
+	 * available, keeps the coordinates it had in the buffer.
+	 * 
+	 * @param dc
+	 * @param coords
+	 *            at least 3 * end coordinates
+	 * @param start
+	 *            the first point
+	 * @param end
+	 *            the point after the last point
+	 */
+	protected void computeGridPoints(DrawContext dc, FloatBuffer coords, int start, int end) {
+		// Positions on an ellipsoid are converted in parallel, over the cached
+		// terrain elevations unless ABSOLUTE
+		Globe globe = dc.getGlobe();
+		if (isEllipsoidal(globe)) {
+			AbsolutePointsTask task;
+			if (this.getAltitudeMode() == WorldWind.ABSOLUTE) {
+				double exaggeration = this.applyVerticalExaggeration ? dc.getVerticalExaggeration() : 1;
+				task = new AbsolutePointsTask((EllipsoidalGlobe) globe, exaggeration, this.latitudes, this.longitudes, this.altitudes, null, coords, start, end);
+			} else {
+				this.readTerrainElevations(dc, (EllipsoidalGlobe) globe, start, end);
+				double altitudeScale = this.getAltitudeMode() == WorldWind.CLAMP_TO_GROUND ? 0 : 1;
+				task = new AbsolutePointsTask((EllipsoidalGlobe) globe, altitudeScale, this.latitudes, this.longitudes, this.altitudes, this.terrainElevations, coords, start, end);
+			}
+			if (end - start < 2 * MIN_PARALLEL_POINT_COUNT)
+				task.compute();
+			else
+				ForkJoinPool.commonPool().invoke(task);
+			return;
+		}
 		
-		while (posIter.hasNext()) {
-			Vec4 pt = this.computePoint(dc, posIter.next());
+		for (int index = start; index < end; index++) {
+			Vec4 pt = this.computePoint(dc, this.latitudes[index], this.longitudes[index], this.altitudes[index]);
 			if (pt == null)
 				continue;
 			
-			coords.put((float) pt.x).put((float) pt.y).put((float) pt.z);
+			coords.put(3 * index, (float) pt.x).put(3 * index + 1, (float) pt.y).put(3 * index + 2, (float) pt.z);
 		}
-		
-		coords.flip();
-		
-		return coords;
 	}
 	
-	protected FloatBuffer computeGridPointColors(DrawContext dc, FloatBuffer coords) {
+	/**
+	 * Reads the terrain elevation under each point of a range that has none
+	 * cached. The elevation is that of the surface point of the terrain along
+	 * the ellipsoid normal, so a point at that elevation lies on the terrain;
+	 * where the terrain is not available, the elevation model of the globe is
+	 * used.
+	 * 
+	 * @param dc
+	 * @param globe
+	 * @param start
+	 * @param end
+	 */
+	protected void readTerrainElevations(DrawContext dc, EllipsoidalGlobe globe, int start, int end) {
+		double equatorialRadius = globe.getEquatorialRadius();
+		double eccentricitySquared = globe.getEccentricitySquared();
+		for (int index = start; index < end; index++) {
+			if (!Float.isNaN(this.terrainElevations[index]))
+				continue;
+			
+			Angle lat = Angle.fromDegrees(this.latitudes[index]);
+			Angle lon = Angle.fromDegrees(this.longitudes[index]);
+			Vec4 surfacePoint = dc.getTerrain().getSurfacePoint(lat, lon, 0);
+			if (surfacePoint == null) {
+				this.terrainElevations[index] = (float) (dc.getVerticalExaggeration() * globe.getElevation(lat, lon));
+				continue;
+			}
+			
+			// Height of the surface point above the ellipsoid point
+			double cosLat = Math.cos(lat.radians);
+			double sinLat = Math.sin(lat.radians);
+			double cosLon = Math.cos(lon.radians);
+			double sinLon = Math.sin(lon.radians);
+			double rpm = equatorialRadius / Math.sqrt(1.0 - eccentricitySquared * sinLat * sinLat);
+			double dx = surfacePoint.x - rpm * cosLat * sinLon;
+			double dy = surfacePoint.y - rpm * (1.0 - eccentricitySquared) * sinLat;
+			double dz = surfacePoint.z - rpm * cosLat * cosLon;
+			this.terrainElevations[index] = (float) (dx * cosLat * sinLon + dy * sinLat + dz * cosLat * cosLon);
+		}
+	}
+	
+	/**
+	 * Packs colors into a direct buffer of RGBA bytes, for
+	 * <code>glColorPointer(4, GL_UNSIGNED_BYTE, ...)</code>.
+	 * 
+	 * @param colors
+	 *            packed ARGB colors, may be null
+	 * @return the buffer, or null if no colors are provided
+	 */
+	protected ByteBuffer computeGridPointColors(int[] colors) {
 		// Check is colorization has been provided
-		if (this.colors == null) {
+		if (colors == null) {
 			return null;
 		}
 		
-		// Coordinate for RGBA
-		int numCoords = 4 * this.numPositions;
-		if (coords == null || coords.capacity() < numCoords || coords.capacity() > 1.5 * numCoords)
-			coords = Buffers.newDirectFloatBuffer(numCoords);
-		coords.rewind();
-		
-		// Add color
-		for (Color color : this.colors) {
-			coords.put((float) color.getRed() / 255.0f);
-			coords.put((float) color.getGreen() / 255.0f);
-			coords.put((float) color.getBlue() / 255.0f);
-			coords.put((float) color.getAlpha() / 255.0f);
+		// Four bytes per color, written as big-endian RGBA ints
+		ByteBuffer rgba = Buffers.newDirectByteBuffer(4 * colors.length).order(ByteOrder.BIG_ENDIAN);
+		IntBuffer rgbaInts = rgba.asIntBuffer();
+		for (int color : colors) {
+			rgbaInts.put(toRgba(color));
 		}
 		
-		coords.flip();
-		return coords;
+		return rgba;
+	}
+	
+	/**
+	 * Rewrites ranges of the RGBA buffer from the packed ARGB colors.
+	 * 
+	 * @param ranges
+	 *            start and end pairs of points
+	 */
+	protected void updateGridPointColors(int[] ranges) {
+		IntBuffer rgba = this.currentColors.asIntBuffer();
+		int colorCount = Math.min(this.colors.length, rgba.capacity());
+		for (int rangeIndex = 0; rangeIndex < ranges.length; rangeIndex += 2) {
+			for (int index = ranges[rangeIndex]; index < Math.min(ranges[rangeIndex + 1], colorCount); index++) {
+				rgba.put(index, toRgba(this.colors[index]));
+			}
+		}
+	}
+	
+	// Moves the alpha of a packed ARGB color to the low byte
+	protected static int toRgba(int argb) {
+		return (argb << 8) | (argb >>> 24);
 	}
 	
 	protected Vec4 computePoint(DrawContext dc, Position pos) {
@@ -751,4 +1994,266 @@ public class ColorizedPointGrid extends WWObjectImpl implements OrderedRenderabl
 		
 		return dc.getGlobe().computePointFromPosition(pos);
 	}
+	
+	/**
+	 * Returns true if the globe computes points with the ellipsoid formula of
+	 * {@link EllipsoidalGlobe}, i.e. it is not a flat (2D) globe.
+	 * 
+	 * @param globe
+	 * @return
+	 */
+	protected static boolean isEllipsoidal(Globe globe) {
+		return globe instanceof EllipsoidalGlobe && !(globe instanceof FlatGlobe);
+	}
+	
+	protected Vec4 computePoint(DrawContext dc, double latitude, double longitude, double altitude) {
+		Angle lat = Angle.fromDegrees(latitude);
+		Angle lon = Angle.fromDegrees(longitude);
+		
+		if (this.getAltitudeMode() == WorldWind.CLAMP_TO_GROUND)
+			return dc.getTerrain().getSurfacePoint(lat, lon, 0);
+		
+		if (this.getAltitudeMode() == WorldWind.RELATIVE_TO_GROUND)
+			return dc.getTerrain().getSurfacePoint(lat, lon, altitude);
+		
+		if (this.applyVerticalExaggeration)
+			altitude = dc.getVerticalExaggeration() * altitude;
+		
+		return dc.getGlobe().computePointFromPosition(lat, lon, altitude);
+	}
+	
+	/**
+	 * Converts a range of ABSOLUTE positions to Cartesian points, splitting it
+	 * in halves across a fork/join pool. Each range writes its own coordinates
+	 * of the buffer with absolute puts, so no synchronization is required, and
+	 * the conversion allocates nothing per point. The arithmetic is that of
+	 * {@link EllipsoidalGlobe#computePointFromPosition(Angle, Angle, double)},
+	 * so the points are the same as when converted one at a time.
+	 * <p>
+	 * The elevation of a point is its altitude times the exaggeration, plus
+	 * its base elevation when base elevations are given, e.g. the terrain
+	 * elevation for points relative to the ground.
+	 */
+	protected static class AbsolutePointsTask extends RecursiveAction {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private static final double DEGREES_TO_RADIANS = Math.PI / 180;
+		
+		protected final double equatorialRadius;
+		
+		protected final double eccentricitySquared;
+		
+		protected final double exaggeration;
+		
+		protected final double[] latitudes;
+		
+		protected final double[] longitudes;
+		
+		protected final double[] altitudes;
+		
+		protected final float[] baseElevations;
+		
+		/** The point of the first element of the position arrays. */
+		protected final int positionOffset;
+		
+		protected final FloatBuffer coords;
+		
+		protected final int start;
+		
+		protected final int end;
+		
+		public AbsolutePointsTask(EllipsoidalGlobe globe, double exaggeration, double[] latitudes, double[] longitudes, double[] altitudes, FloatBuffer coords, int start, int end) {
+			this(globe, exaggeration, latitudes, longitudes, altitudes, null, coords, start, end);
+		}
+		
+		/**
+		 * @param globe
+		 * @param exaggeration
+		 *            the factor of the altitudes
+		 * @param latitudes
+		 * @param longitudes
+		 * @param altitudes
+		 * @param baseElevations
+		 *            the elevation added to each altitude, may be null
+		 * @param coords
+		 * @param start
+		 * @param end
+		 */
+		public AbsolutePointsTask(EllipsoidalGlobe globe, double exaggeration, double[] latitudes, double[] longitudes, double[] altitudes, float[] baseElevations, FloatBuffer coords, int start, int end) {
+			this(globe, exaggeration, latitudes, longitudes, altitudes, baseElevations, 0, coords, start, end);
+		}
+		
+		/**
+		 * @param globe
+		 * @param exaggeration
+		 *            the factor of the altitudes
+		 * @param latitudes
+		 * @param longitudes
+		 * @param altitudes
+		 * @param baseElevations
+		 *            the elevation added to each altitude, may be null
+		 * @param positionOffset
+		 *            the point of the first element of the latitudes,
+		 *            longitudes, altitudes and base elevations, e.g. start when
+		 *            they hold only the range of points
+		 * @param coords
+		 * @param start
+		 * @param end
+		 */
+		public AbsolutePointsTask(EllipsoidalGlobe globe, double exaggeration, double[] latitudes, double[] longitudes, double[] altitudes, float[] baseElevations, int positionOffset, FloatBuffer coords, int start, int end) {
+			this(globe.getEquatorialRadius(), globe.getEccentricitySquared(), exaggeration, latitudes, longitudes, altitudes, baseElevations, positionOffset, coords, start, end);
+		}
+		
+		protected AbsolutePointsTask(double equatorialRadius, double eccentricitySquared, double exaggeration, double[] latitudes, double[] longitudes, double[] altitudes, float[] baseElevations, int positionOffset, FloatBuffer coords, int start, int end) {
+			this.equatorialRadius = equatorialRadius;
+			this.eccentricitySquared = eccentricitySquared;
+			this.exaggeration = exaggeration;
+			this.latitudes = latitudes;
+			this.longitudes = longitudes;
+			this.altitudes = altitudes;
+			this.baseElevations = baseElevations;
+			this.positionOffset = positionOffset;
+			this.coords = coords;
+			this.start = start;
+			this.end = end;
+		}
+		
+		@Override
+		protected void compute() {
+			if (this.end - this.start < 2 * MIN_PARALLEL_POINT_COUNT || getPool() == null) {
+				this.computeRange();
+				return;
+			}
+			
+			int middle = (this.start + this.end) >>> 1;
+			invokeAll(new AbsolutePointsTask(this.equatorialRadius, this.eccentricitySquared, this.exaggeration, this.latitudes, this.longitudes, this.altitudes, this.baseElevations, this.positionOffset, this.coords, this.start, middle), new AbsolutePointsTask(this.equatorialRadius, this.eccentricitySquared, this.exaggeration, this.latitudes, this.longitudes, this.altitudes, this.baseElevations, this.positionOffset, this.coords, middle, this.end));
+		}
+		
+		protected void computeRange() {
+			for (int index = this.start; index < this.end; index++) {
+				int positionIndex = index - this.positionOffset;
+				double lat = DEGREES_TO_RADIANS * this.latitudes[positionIndex];
+				double lon = DEGREES_TO_RADIANS * this.longitudes[positionIndex];
+				double metersElevation = this.exaggeration * this.altitudes[positionIndex];
+				if (this.baseElevations != null)
+					metersElevation += this.baseElevations[positionIndex];
+				
+				double cosLat = Math.cos(lat);
+				double sinLat = Math.sin(lat);
+				double cosLon = Math.cos(lon);
+				double sinLon = Math.sin(lon);
+				
+				// Radius in meters of the vertical in the prime meridian
+				double rpm = this.equatorialRadius / Math.sqrt(1.0 - this.eccentricitySquared * sinLat * sinLat);
+				
+				int coordIndex = 3 * index;
+				this.coords.put(coordIndex, (float) ((rpm + metersElevation) * cosLat * sinLon));
+				this.coords.put(coordIndex + 1, (float) ((rpm * (1.0 - this.eccentricitySquared) + metersElevation) * sinLat));
+				this.coords.put(coordIndex + 2, (float) ((rpm + metersElevation) * cosLat * cosLon));
+			}
+		}
+	}
+	
+	/**
+	 * A range of consecutive points, with the bounds of their positions, their
+	 * extent, and whether their points are up to date and drawn.
+	 */
+	protected static class Chunk {
+		
+		protected final int start;
+		
+		protected final int end;
+		
+		protected Sector sector;
+		
+		protected double minAltitude;
+		
+		protected double maxAltitude;
+		
+		/** The bounding box, or null until computed for the current bounds. */
+		protected Extent extent;
+		
+		/** True when the points of the chunk are up to date in the buffer. */
+		protected boolean pointsValid = false;
+		
+		/** The terrain signature the cached terrain elevations were read at. */
+		protected long terrainSignature = 0;
+		
+		/** True when the buffer holds points of the chunk, if out of date. */
+		protected boolean pointsInBuffer = false;
+		
+		/** Incremented whenever the chunk is invalidated. */
+		protected int invalidationCount = 0;
+		
+		/** True when the chunk is drawn in the current frame. */
+		protected boolean drawn = false;
+		
+		public Chunk(int start, int end) {
+			this.start = start;
+			this.end = end;
+		}
+		
+		/**
+		 * Computes the sector and altitude range of the positions of the
+		 * chunk, and clears the extent.
+		 * 
+		 * @param latitudes
+		 * @param longitudes
+		 * @param altitudes
+		 */
+		public void computeBounds(double[] latitudes, double[] longitudes, double[] altitudes) {
+			double minLatitude = Double.MAX_VALUE;
+			double maxLatitude = -Double.MAX_VALUE;
+			double minLongitude = Double.MAX_VALUE;
+			double maxLongitude = -Double.MAX_VALUE;
+			double minAltitude = Double.MAX_VALUE;
+			double maxAltitude = -Double.MAX_VALUE;
+			for (int index = this.start; index < this.end; index++) {
+				minLatitude = Math.min(minLatitude, latitudes[index]);
+				maxLatitude = Math.max(maxLatitude, latitudes[index]);
+				minLongitude = Math.min(minLongitude, longitudes[index]);
+				maxLongitude = Math.max(maxLongitude, longitudes[index]);
+				minAltitude = Math.min(minAltitude, altitudes[index]);
+				maxAltitude = Math.max(maxAltitude, altitudes[index]);
+			}
+			this.sector = this.end > this.start ? Sector.fromDegrees(minLatitude, maxLatitude, minLongitude, maxLongitude) : null;
+			this.minAltitude = minAltitude;
+			this.maxAltitude = maxAltitude;
+			this.extent = null;
+		}
+		
+		/**
+		 * Marks the points and extent of the chunk out of date.
+		 */
+		public void invalidate() {
+			this.pointsValid = false;
+			this.extent = null;
+			this.invalidationCount++;
+		}
+	}
+	
+	/**
+	 * The points of a background regeneration, published to the render thread.
+	 */
+	protected static class RegeneratedPoints {
+		
+		/** The geometry generation the points were computed for. */
+		protected final long generation;
+		
+		protected final FloatBuffer points;
+		
+		/** The chunks regenerated. */
+		protected final int[] chunkIndices;
+		
+		/** The invalidation count of each chunk when the regeneration started. */
+		protected final int[] invalidationCounts;
+		
+		public RegeneratedPoints(long generation, FloatBuffer points, int[] chunkIndices, int[] invalidationCounts) {
+			this.generation = generation;
+			this.points = points;
+			this.chunkIndices = chunkIndices;
+			this.invalidationCounts = invalidationCounts;
+		}
+	}
 }
@@ -0,0 +1,169 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import gov.nasa.worldwind.util.Logging;
+
+/**
+ * A set of dirty index ranges [start, end), kept sorted and coalesced:
+ * overlapping or adjacent ranges are joined as they are added. The number of
+ * ranges is bounded; past the bound, the two ranges with the smallest gap
+ * between them are joined, so a flush costs a bounded number of ranges and at
+ * worst recomputes a few clean indices between them.
+ * <p>
+ * Ranges are marked by the thread that changes the data and drained by the
+ * rendering thread, so every method is synchronized.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class DirtyIndexRanges {
+
+	/** The number of ranges kept when none is specified. */
+	public static final int DEFAULT_MAX_RANGE_COUNT = 64;
+
+	private static final int[] EMPTY_RANGES = new int[0];
+
+	private final int maxRangeCount;
+
+	private int[] starts = new int[8];
+
+	private int[] ends = new int[8];
+
+	private int rangeCount = 0;
+
+	public DirtyIndexRanges() {
+		this(DEFAULT_MAX_RANGE_COUNT);
+	}
+
+	/**
+	 * @param maxRangeCount
+	 *            the number of ranges above which the closest ranges are joined
+	 */
+	public DirtyIndexRanges(int maxRangeCount) {
+		if (maxRangeCount < 1) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", "maxRangeCount=" + maxRangeCount);
+			Logging.logger().severe(msg);
+			throw new IllegalArgumentException(msg);
+		}
+		this.maxRangeCount = maxRangeCount;
+	}
+
+	/**
+	 * Marks the indices [start, end) dirty.
+	 *
+	 * @param start
+	 * @param end
+	 */
+	public synchronized void add(int start, int end) {
+		if (start < 0 || end < start) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", "start=" + start + ", end=" + end);
+			Logging.logger().severe(msg);
+			throw new IllegalArgumentException(msg);
+		}
+		if (start == end) {
+			return;
+		}
+
+		// The ranges [first, last) overlap or touch the new range
+		int first = firstRangeEndingAtOrAfter(start);
+		int last = first;
+		while (last < rangeCount && starts[last] <= end) {
+			last++;
+		}
+		if (first < last) {
+			start = Math.min(start, starts[first]);
+			end = Math.max(end, ends[last - 1]);
+		}
+
+		// Replace them by the joined range
+		int newRangeCount = rangeCount - (last - first) + 1;
+		if (newRangeCount > starts.length) {
+			int[] newStarts = new int[2 * starts.length];
+			int[] newEnds = new int[2 * ends.length];
+			System.arraycopy(starts, 0, newStarts, 0, rangeCount);
+			System.arraycopy(ends, 0, newEnds, 0, rangeCount);
+			starts = newStarts;
+			ends = newEnds;
+		}
+		System.arraycopy(starts, last, starts, first + 1, rangeCount - last);
+		System.arraycopy(ends, last, ends, first + 1, rangeCount - last);
+		starts[first] = start;
+		ends[first] = end;
+		rangeCount = newRangeCount;
+
+		if (rangeCount > maxRangeCount) {
+			joinClosestRanges();
+		}
+	}
+
+	// Binary search for the first range whose end is at or after the index
+	private int firstRangeEndingAtOrAfter(int index) {
+		int low = 0;
+		int high = rangeCount;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (ends[middle] < index) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	// Joins the two neighboring ranges with the smallest gap between them
+	private void joinClosestRanges() {
+		int closest = 0;
+		for (int index = 1; index < rangeCount - 1; index++) {
+			if (starts[index + 1] - ends[index] < starts[closest + 1] - ends[closest]) {
+				closest = index;
+			}
+		}
+		ends[closest] = ends[closest + 1];
+		System.arraycopy(starts, closest + 2, starts, closest + 1, rangeCount - closest - 2);
+		System.arraycopy(ends, closest + 2, ends, closest + 1, rangeCount - closest - 2);
+		rangeCount--;
+	}
+
+	/**
+	 * Provides the dirty ranges and clears them, in one step.
+	 *
+	 * @return the ranges as start and end pairs, ascending
+	 */
+	public synchronized int[] drain() {
+		if (rangeCount == 0) {
+			return EMPTY_RANGES;
+		}
+		int[] ranges = new int[2 * rangeCount];
+		for (int index = 0; index < rangeCount; index++) {
+			ranges[2 * index] = starts[index];
+			ranges[2 * index + 1] = ends[index];
+		}
+		rangeCount = 0;
+		return ranges;
+	}
+
+	public synchronized void clear() {
+		rangeCount = 0;
+	}
+
+	public synchronized boolean isEmpty() {
+		return rangeCount == 0;
+	}
+
+	public synchronized int getRangeCount() {
+		return rangeCount;
+	}
+
+	/**
+	 * Provides the number of dirty indices.
+	 *
+	 * @return
+	 */
+	public synchronized int getIndexCount() {
+		int indexCount = 0;
+		for (int index = 0; index < rangeCount; index++) {
+			indexCount += ends[index] - starts[index];
+		}
+		return indexCount;
+	}
+}
@@ -56,6 +56,6 @@ public class IndexedPositionColors implements Path.PositionColors {
 		if (position instanceof IndexedPosition) {
 			index = ((IndexedPosition) position).getIndex();
 		}
-		return AwtColorScheme.getVisibleSpectrum((float) index / (float) pathPointCount);
+		return AwtColorScheme.getVisibleSpectrumLut().getColor((float) index / (float) pathPointCount);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,209 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import gov.nasa.worldwind.geom.Matrix;
+import gov.nasa.worldwind.util.Logging;
+
+import java.awt.Rectangle;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A screen-space grid of buckets over the projected points of a point buffer,
+ * so a pick only needs to look at the points near the pick point instead of
+ * every point.
+ * <p>
+ * The index is built once per view (modelview-projection matrix and viewport)
+ * and version of the points, and queried with the screen rectangles of the
+ * pick frustums. Buckets hold point indices in ascending order, stored
+ * contiguously by bucket. The projection of the index only needs to be close:
+ * a query widens each rectangle by a pixel and returns candidates, which the
+ * caller tests exactly as it would without the index.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class ScreenPointIndex {
+
+	/** The width and height of a bucket, in pixels, when none is specified. */
+	public static final int DEFAULT_BUCKET_SIZE = 16;
+
+	/* Pixels added around a query rectangle, covering rounding differences */
+	private static final int QUERY_MARGIN = 1;
+
+	private static final int[] NO_POINTS = new int[0];
+
+	private final int bucketSize;
+
+	/* The view and points of the index */
+	private Matrix modelviewProjection;
+
+	private Rectangle viewport;
+
+	private long pointsVersion = -1;
+
+	/* Bucket grid over the viewport, widened by one bucket on each side */
+	private int originX;
+
+	private int originY;
+
+	private int columns;
+
+	private int rows;
+
+	/* Points of bucket b are bucketPoints[bucketStarts[b]] up to bucketPoints[bucketStarts[b + 1]] */
+	private int[] bucketStarts;
+
+	private int[] bucketPoints;
+
+	/* Bucket of each point, or -1 if it is not indexed, reused between builds */
+	private int[] pointBuckets;
+
+	public ScreenPointIndex() {
+		this(DEFAULT_BUCKET_SIZE);
+	}
+
+	/**
+	 * @param bucketSize
+	 *            the width and height of a bucket, in pixels
+	 */
+	public ScreenPointIndex(int bucketSize) {
+		if (bucketSize < 1) {
+			String msg = Logging.getMessage("generic.ArgumentOutOfRange", "bucketSize=" + bucketSize);
+			Logging.logger().severe(msg);
+			throw new IllegalArgumentException(msg);
+		}
+		this.bucketSize = bucketSize;
+	}
+
+	/**
+	 * Returns true if the index was built for the view and version of the
+	 * points.
+	 *
+	 * @param modelviewProjection
+	 *            the projection matrix times the modelview matrix
+	 * @param viewport
+	 * @param pointsVersion
+	 * @return
+	 */
+	public boolean isCurrent(Matrix modelviewProjection, Rectangle viewport, long pointsVersion) {
+		return this.pointsVersion == pointsVersion && modelviewProjection.equals(this.modelviewProjection) && viewport.equals(this.viewport);
+	}
+
+	/**
+	 * Projects the points and buckets them by screen position. Points behind
+	 * the eye or off the viewport by more than a bucket are not indexed.
+	 *
+	 * @param points
+	 *            x, y and z of each point
+	 * @param pointCount
+	 * @param modelviewProjection
+	 *            the projection matrix times the modelview matrix
+	 * @param viewport
+	 * @param pointsVersion
+	 *            a number that changes whenever the points change
+	 */
+	public void build(FloatBuffer points, int pointCount, Matrix modelviewProjection, Rectangle viewport, long pointsVersion) {
+		this.modelviewProjection = modelviewProjection;
+		this.viewport = new Rectangle(viewport);
+		this.pointsVersion = pointsVersion;
+		this.originX = viewport.x - bucketSize;
+		this.originY = viewport.y - bucketSize;
+		this.columns = (viewport.width + bucketSize - 1) / bucketSize + 2;
+		this.rows = (viewport.height + bucketSize - 1) / bucketSize + 2;
+		if (pointBuckets == null || pointBuckets.length < pointCount) {
+			pointBuckets = new int[pointCount];
+		}
+
+		// Bucket each point and count the points of each bucket
+		Matrix m = modelviewProjection;
+		int[] bucketCounts = new int[columns * rows + 1];
+		int indexedCount = 0;
+		for (int index = 0; index < pointCount; index++) {
+			double x = points.get(3 * index);
+			double y = points.get(3 * index + 1);
+			double z = points.get(3 * index + 2);
+			double w = m.m41 * x + m.m42 * y + m.m43 * z + m.m44;
+			pointBuckets[index] = -1;
+			if (w <= 0) {
+				continue;
+			}
+			double screenX = viewport.x + (1 + (m.m11 * x + m.m12 * y + m.m13 * z + m.m14) / w) * viewport.width / 2;
+			double screenY = viewport.y + (1 + (m.m21 * x + m.m22 * y + m.m23 * z + m.m24) / w) * viewport.height / 2;
+			int column = (int) Math.floor((screenX - originX) / bucketSize);
+			int row = (int) Math.floor((screenY - originY) / bucketSize);
+			if (column < 0 || column >= columns || row < 0 || row >= rows) {
+				continue;
+			}
+			int bucket = row * columns + column;
+			pointBuckets[index] = bucket;
+			bucketCounts[bucket + 1]++;
+			indexedCount++;
+		}
+
+		// Lay the buckets out contiguously, points in ascending order
+		for (int bucket = 0; bucket < columns * rows; bucket++) {
+			bucketCounts[bucket + 1] += bucketCounts[bucket];
+		}
+		bucketStarts = bucketCounts;
+		if (bucketPoints == null || bucketPoints.length < indexedCount || bucketPoints.length > 2 * indexedCount) {
+			bucketPoints = new int[indexedCount];
+		}
+		int[] bucketEnds = Arrays.copyOf(bucketStarts, columns * rows);
+		for (int index = 0; index < pointCount; index++) {
+			int bucket = pointBuckets[index];
+			if (bucket >= 0) {
+				bucketPoints[bucketEnds[bucket]++] = index;
+			}
+		}
+	}
+
+	/**
+	 * Provides the points whose buckets overlap any of the rectangles.
+	 *
+	 * @param screenRects
+	 *            rectangles in OpenGL screen coordinates, origin at the bottom
+	 *            left of the viewport
+	 * @return the point indices, ascending and without duplicates
+	 */
+	public int[] query(List<? extends Rectangle> screenRects) {
+		if (bucketStarts == null || screenRects.isEmpty()) {
+			return NO_POINTS;
+		}
+
+		int[] candidates = NO_POINTS;
+		int candidateCount = 0;
+		for (Rectangle rect : screenRects) {
+			int firstColumn = Math.max(0, Math.floorDiv(rect.x - QUERY_MARGIN - originX, bucketSize));
+			int lastColumn = Math.min(columns - 1, Math.floorDiv(rect.x + rect.width + QUERY_MARGIN - originX, bucketSize));
+			int firstRow = Math.max(0, Math.floorDiv(rect.y - QUERY_MARGIN - originY, bucketSize));
+			int lastRow = Math.min(rows - 1, Math.floorDiv(rect.y + rect.height + QUERY_MARGIN - originY, bucketSize));
+			for (int row = firstRow; row <= lastRow; row++) {
+				for (int column = firstColumn; column <= lastColumn; column++) {
+					int bucket = row * columns + column;
+					int start = bucketStarts[bucket];
+					int count = bucketStarts[bucket + 1] - start;
+					if (candidateCount + count > candidates.length) {
+						candidates = Arrays.copyOf(candidates, Math.max(2 * candidates.length, candidateCount + count));
+					}
+					System.arraycopy(bucketPoints, start, candidates, candidateCount, count);
+					candidateCount += count;
+				}
+			}
+		}
+
+		// Buckets and rectangles interleave indices, restore ascending order
+		Arrays.sort(candidates, 0, candidateCount);
+		int uniqueCount = 0;
+		for (int index = 0; index < candidateCount; index++) {
+			if (uniqueCount == 0 || candidates[index] != candidates[uniqueCount - 1]) {
+				candidates[uniqueCount++] = candidates[index];
+			}
+		}
+		return Arrays.copyOf(candidates, uniqueCount);
+	}
+
+	public int getBucketSize() {
+		return bucketSize;
+	}
+}
@@ -0,0 +1,788 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import gov.nasa.worldwind.avlist.AVKey;
+import gov.nasa.worldwind.geom.Angle;
+import gov.nasa.worldwind.geom.Extent;
+import gov.nasa.worldwind.geom.Sector;
+import gov.nasa.worldwind.layers.AbstractLayer;
+import gov.nasa.worldwind.render.DrawContext;
+import gov.nasa.worldwind.render.SurfaceImage;
+import gov.nasa.worldwind.util.Logging;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+
+import javax.media.opengl.GL;
+
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameDelta;
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameKey;
+import com.binaryworkspace.rcp.wwj.models.SurfaceModel;
+import com.jogamp.opengl.util.texture.Texture;
+import com.jogamp.opengl.util.texture.TextureData;
+import com.jogamp.opengl.util.texture.awt.AWTTextureIO;
+
+/**
+ * A level-of-detail layer that drapes a SurfaceModel over a sector as a
+ * quadtree of image tiles, generated on demand at the resolution the view
+ * needs.
+ * <p>
+ * The frame key (see setFrameKey()) gives the nominal resolution of the
+ * field. Level 0 is that field scaled down until it fits a single tile; every
+ * following level doubles the resolution, up to a number of levels finer than
+ * the nominal resolution (see setExtraLevelCount()). A tile is split into its
+ * four children when its cells are larger on screen than a pixel, so only the
+ * tiles in view are generated, and only at the detail they are seen at.
+ * <p>
+ * Tiles are generated from SurfaceModel.getArgbTile() on background threads
+ * and kept in a least-recently-used cache of a bounded number of tiles. While
+ * a tile is being generated its parent is drawn instead, and a tile of a
+ * previous frame is drawn until its current frame is ready, so the surface
+ * never flickers during animation.
+ * <p>
+ * During animation the tiles drawn for the current frame are also generated
+ * for the frames that follow it (see setPrefetchFrameCount()), once every
+ * tile of the current frame is ready. A tile generated ahead is handed over as
+ * soon as its frame is set, so playback only swaps finished tiles. Tiles
+ * generated ahead are discarded, and their generation cancelled, when
+ * anything but the frame changes.
+ * <p>
+ * Only what changes from one frame to the next is uploaded: a regenerated tile
+ * is compared with the tile it replaces block by block (see
+ * SurfaceFrameDelta). A tile whose cells are identical keeps its image, and so
+ * its texture; a tile of which few blocks changed keeps its image too, and
+ * only the dirty regions are written to the image and its texture on the
+ * rendering thread (see TileImage). A tile that changed nearly everywhere gets
+ * a new image, which is uploaded whole.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class SurfaceModelTileLayer extends AbstractLayer {
+
+	/** The width and height of a tile, in cells, when none is specified. */
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	/** The number of tiles kept in the cache when none is specified. */
+	public static final int DEFAULT_TILE_CACHE_CAPACITY = 512;
+
+	/** The number of levels finer than the nominal resolution. */
+	public static final int DEFAULT_EXTRA_LEVEL_COUNT = 4;
+
+	/** The number of frames whose tiles are generated ahead of the current frame. */
+	public static final int DEFAULT_PREFETCH_FRAME_COUNT = 2;
+
+	/** The number of tile generation threads. */
+	protected static final int GENERATION_THREAD_COUNT = 2;
+
+	/**
+	 * The number of tiles generated at once. Further tiles are requested by
+	 * the redraw that follows a finished tile, so requests always reflect the
+	 * current view.
+	 */
+	protected static final int MAX_PENDING_TILE_COUNT = 2 * GENERATION_THREAD_COUNT;
+
+	/**
+	 * The number of tiles of following frames generated at once, so tiles of
+	 * the current frame never wait long behind them.
+	 */
+	protected static final int MAX_PENDING_PREFETCH_COUNT = GENERATION_THREAD_COUNT;
+
+	/**
+	 * A tile is split once its cells are larger on screen than this many
+	 * pixels.
+	 */
+	protected static final double SPLIT_CELL_SIZE_IN_PIXELS = 1.0;
+
+	/**
+	 * A tile is updated in place while at most this fraction of its cells lie
+	 * in dirty blocks; otherwise it gets a new image.
+	 */
+	protected static final double MAX_DIRTY_CELL_FRACTION = 0.5;
+
+	/**
+	 * The image of a tile, updated in place by the deltas of the tiles that
+	 * replace it. A delta is only applied to the image on the rendering
+	 * thread, in preRender(), where its dirty regions are also written to the
+	 * texture of the image if it has been created, so the rest of the texture
+	 * is not uploaded again.
+	 */
+	protected static class TileImage extends SurfaceImage {
+
+		protected final BufferedImage image;
+
+		/* Deltas not yet applied, oldest first. Guarded by this */
+		protected final List<SurfaceFrameDelta> pendingDeltaList = new ArrayList<SurfaceFrameDelta>();
+
+		public TileImage(BufferedImage image, Sector sector) {
+			super(image, sector);
+			this.image = image;
+		}
+
+		/**
+		 * Queues a delta from the cells the image shows, once the deltas
+		 * already queued are applied.
+		 *
+		 * @param delta
+		 */
+		public synchronized void addDelta(SurfaceFrameDelta delta) {
+			pendingDeltaList.add(delta);
+		}
+
+		@Override
+		public void preRender(DrawContext dc) {
+			applyPendingDeltas(dc);
+			super.preRender(dc);
+		}
+
+		// Writes the dirty regions of the queued deltas to the image and to
+		// its texture
+		protected void applyPendingDeltas(DrawContext dc) {
+			List<SurfaceFrameDelta> deltaList;
+			synchronized (this) {
+				if (pendingDeltaList.isEmpty()) {
+					return;
+				}
+				deltaList = new ArrayList<SurfaceFrameDelta>(pendingDeltaList);
+				pendingDeltaList.clear();
+			}
+			int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+			for (SurfaceFrameDelta delta : deltaList) {
+				delta.applyTo(data);
+			}
+
+			// A texture not created yet is created from the updated image
+			Texture texture = dc.getTextureCache().getTexture(image);
+			if (texture == null) {
+				return;
+			}
+			GL gl = dc.getGL();
+			TextureData textureData = AWTTextureIO.newTextureData(gl.getGLProfile(), image, false);
+			for (SurfaceFrameDelta delta : deltaList) {
+				for (Rectangle region : delta.getDirtyRegions()) {
+					texture.updateSubImage(gl, textureData, 0, region.x, region.y, region.x, region.y, region.width, region.height);
+				}
+			}
+			if (!texture.isUsingAutoMipmapGeneration() && gl.isFunctionAvailable("glGenerateMipmap")) {
+				texture.bind(gl);
+				gl.glGenerateMipmap(texture.getTarget());
+			}
+		}
+	}
+
+	/**
+	 * A generated tile, its cells and the frame (level key) it was generated
+	 * for. The image shows the cells once its pending deltas are applied (see
+	 * TileImage).
+	 */
+	protected static class Tile {
+
+		protected final SurfaceFrameKey levelKey;
+
+		protected final SurfaceImage surfaceImage;
+
+		protected final int[] argb;
+
+		public Tile(SurfaceFrameKey levelKey, SurfaceImage surfaceImage, int[] argb) {
+			this.levelKey = levelKey;
+			this.surfaceImage = surfaceImage;
+			this.argb = argb;
+		}
+	}
+
+	protected final int tileSize;
+
+	protected final ExecutorService executor;
+
+	/* Guarded by this */
+	protected final LinkedHashMap<Long, Tile> tileCache;
+
+	/* Guarded by this */
+	protected final Set<Long> pendingTileSet = new HashSet<Long>();
+
+	/* Tiles selected by the current preRender, drawn by the following render */
+	protected final List<Tile> renderTileList = new ArrayList<Tile>();
+
+	/* Indices of the tiles the current preRender selected for the view */
+	protected final List<Long> selectedTileIndexList = new ArrayList<Long>();
+
+	/* Tiles generated ahead, by frame and tile index. Guarded by this */
+	protected final Map<Integer, Map<Long, Tile>> prefetchedTileMaps = new HashMap<Integer, Map<Long, Tile>>();
+
+	/* Generations of tiles ahead in progress, by frame and tile index. Guarded by this */
+	protected final Map<Integer, Map<Long, Future<?>>> prefetchFutureMaps = new HashMap<Integer, Map<Long, Future<?>>>();
+
+	/* Incremented whenever the tiles generated ahead are discarded. Guarded by this */
+	protected int prefetchGeneration = 0;
+
+	protected int prefetchFrameCount = DEFAULT_PREFETCH_FRAME_COUNT;
+
+	protected volatile SurfaceModel model;
+
+	protected volatile Sector sector;
+
+	protected volatile SurfaceFrameKey frameKey;
+
+	protected int extraLevelCount = DEFAULT_EXTRA_LEVEL_COUNT;
+
+	/* Field size of each level, in cells */
+	protected int[] levelWidths = new int[0];
+
+	protected int[] levelHeights = new int[0];
+
+	/**
+	 * Creates a layer with the default tile size and cache capacity.
+	 */
+	public SurfaceModelTileLayer() {
+		this(DEFAULT_TILE_SIZE, DEFAULT_TILE_CACHE_CAPACITY);
+	}
+
+	/**
+	 * Creates a layer.
+	 *
+	 * @param tileSize
+	 *            the width and height of a tile, in cells
+	 * @param tileCacheCapacity
+	 *            the number of tiles kept in the cache
+	 */
+	public SurfaceModelTileLayer(int tileSize, final int tileCacheCapacity) {
+		if (tileSize < 1) {
+			String message = Logging.getMessage("generic.ArgumentOutOfRange", "tileSize < 1");
+			Logging.logger().severe(message);
+			throw new IllegalArgumentException(message);
+		}
+		this.tileSize = tileSize;
+		this.tileCache = new LinkedHashMap<Long, Tile>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Tile> eldest) {
+				return size() > tileCacheCapacity;
+			}
+		};
+		this.executor = Executors.newFixedThreadPool(GENERATION_THREAD_COUNT, new ThreadFactory() {
+
+			private final AtomicInteger threadIndex = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, SurfaceModelTileLayer.class.getSimpleName() + "-" + threadIndex.incrementAndGet());
+				thread.setDaemon(true);
+				thread.setPriority(Thread.NORM_PRIORITY - 1);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets the model the tiles are generated from. All tiles are discarded.
+	 *
+	 * @param model
+	 */
+	public synchronized void setModel(SurfaceModel model) {
+		this.model = model;
+		tileCache.clear();
+		discardPrefetchedTiles();
+		firePropertyChange(AVKey.LAYER, null, this);
+	}
+
+	public SurfaceModel getModel() {
+		return model;
+	}
+
+	/**
+	 * Sets the sector the field is draped over. Row 0 of the field is drawn
+	 * along the north edge of the sector. All tiles are discarded if the
+	 * sector changed.
+	 *
+	 * @param sector
+	 */
+	public synchronized void setSector(Sector sector) {
+		if (sector != null && sector.equals(this.sector)) {
+			return;
+		}
+		this.sector = sector;
+		tileCache.clear();
+		discardPrefetchedTiles();
+		firePropertyChange(AVKey.LAYER, null, this);
+	}
+
+	public Sector getSector() {
+		return sector;
+	}
+
+	/**
+	 * Sets the frame to draw. The width and height of the key are the nominal
+	 * resolution of the field; the tiles of a different frame (or alpha
+	 * weight) of the same field are drawn until the tiles of this frame have
+	 * been generated. All tiles are discarded if the field changed.
+	 *
+	 * @param frameKey
+	 */
+	public synchronized void setFrameKey(SurfaceFrameKey frameKey) {
+		SurfaceFrameKey previousFrameKey = this.frameKey;
+		this.frameKey = frameKey;
+		boolean isSameField = previousFrameKey != null && previousFrameKey.getWidth() == frameKey.getWidth() && previousFrameKey.getHeight() == frameKey.getHeight()
+				&& Float.floatToIntBits(previousFrameKey.getGridIncrement()) == Float.floatToIntBits(frameKey.getGridIncrement())
+				&& previousFrameKey.getFrames() == frameKey.getFrames();
+		if (!isSameField) {
+			tileCache.clear();
+			computeLevels();
+		}
+		if (!frameKey.isSameSequence(previousFrameKey)) {
+			discardPrefetchedTiles();
+		} else {
+			retainPrefetchWindow();
+		}
+		firePropertyChange(AVKey.LAYER, null, this);
+	}
+
+	public SurfaceFrameKey getFrameKey() {
+		return frameKey;
+	}
+
+	/**
+	 * Sets the number of levels finer than the nominal resolution of the
+	 * field. Each level doubles the resolution.
+	 *
+	 * @param extraLevelCount
+	 */
+	public synchronized void setExtraLevelCount(int extraLevelCount) {
+		this.extraLevelCount = Math.max(0, extraLevelCount);
+		tileCache.clear();
+		discardPrefetchedTiles();
+		computeLevels();
+		firePropertyChange(AVKey.LAYER, null, this);
+	}
+
+	public synchronized int getExtraLevelCount() {
+		return extraLevelCount;
+	}
+
+	/**
+	 * Sets the number of frames following the current frame whose tiles are
+	 * generated ahead, 0 to only generate the tiles of the current frame.
+	 *
+	 * @param prefetchFrameCount
+	 */
+	public synchronized void setPrefetchFrameCount(int prefetchFrameCount) {
+		this.prefetchFrameCount = Math.max(0, prefetchFrameCount);
+		retainPrefetchWindow();
+	}
+
+	public synchronized int getPrefetchFrameCount() {
+		return prefetchFrameCount;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	/**
+	 * Provides the number of tiles in the cache.
+	 *
+	 * @return
+	 */
+	public synchronized int getTileCount() {
+		return tileCache.size();
+	}
+
+	@Override
+	public void dispose() {
+		executor.shutdownNow();
+		synchronized (this) {
+			tileCache.clear();
+			discardPrefetchedTiles();
+		}
+		super.dispose();
+	}
+
+	@Override
+	protected void doPreRender(DrawContext dc) {
+		renderTileList.clear();
+		selectedTileIndexList.clear();
+		if (model == null || sector == null || frameKey == null || dc.getGlobe() == null || dc.getView() == null) {
+			return;
+		}
+		if (sector.getDeltaLatDegrees() <= 0.0 || sector.getDeltaLonDegrees() <= 0.0) {
+			return;
+		}
+		if (dc.getVisibleSector() != null && !sector.intersects(dc.getVisibleSector())) {
+			return;
+		}
+
+		// Select tiles from the top of the quadtree down
+		synchronized (this) {
+			if (levelWidths.length == 0) {
+				return;
+			}
+			int columns = getColumnCount(0);
+			int rows = getRowCount(0);
+			for (int row = 0; row < rows; row++) {
+				for (int column = 0; column < columns; column++) {
+					selectTile(dc, 0, column, row, null);
+				}
+			}
+
+			// Generate ahead once the current frame is ready
+			if (pendingTileSet.isEmpty()) {
+				prefetchTiles();
+			}
+		}
+
+		for (Tile tile : renderTileList) {
+			tile.surfaceImage.preRender(dc);
+		}
+	}
+
+	@Override
+	protected void doRender(DrawContext dc) {
+		for (Tile tile : renderTileList) {
+			tile.surfaceImage.render(dc);
+		}
+	}
+
+	// Selects the tile, or its children if it is too coarse for the view
+	protected void selectTile(DrawContext dc, int level, int column, int row, Tile fallbackTile) {
+		Sector tileSector = getTileSector(level, column, row);
+		if (dc.getVisibleSector() != null && !tileSector.intersects(dc.getVisibleSector())) {
+			return;
+		}
+		Extent extent = Sector.computeBoundingBox(dc.getGlobe(), dc.getVerticalExaggeration(), tileSector);
+		if (!extent.intersects(dc.getView().getFrustumInModelCoordinates())) {
+			return;
+		}
+
+		// Request the tile of the current frame if it is missing or stale
+		Tile tile = getTile(level, column, row);
+		if (tile == null || !tile.levelKey.equals(getLevelKey(level))) {
+			requestTile(level, column, row);
+			tile = getTile(level, column, row);
+		}
+
+		// Split while the cells are too large on screen
+		if (level + 1 < levelWidths.length && isTooCoarse(dc, level, tileSector, extent)) {
+			Tile childFallbackTile = tile != null ? tile : fallbackTile;
+			for (int childRow = 2 * row; childRow < Math.min(2 * row + 2, getRowCount(level + 1)); childRow++) {
+				for (int childColumn = 2 * column; childColumn < Math.min(2 * column + 2, getColumnCount(level + 1)); childColumn++) {
+					selectTile(dc, level + 1, childColumn, childRow, childFallbackTile);
+				}
+			}
+			return;
+		}
+
+		// Draw the tile, or the nearest generated ancestor until it is ready
+		selectedTileIndexList.add(getTileIndex(level, column, row));
+		Tile renderTile = tile != null ? tile : fallbackTile;
+		if (renderTile != null && !renderTileList.contains(renderTile)) {
+			renderTileList.add(renderTile);
+		}
+	}
+
+	// Returns true if the cells of the tile are larger on screen than a pixel
+	protected boolean isTooCoarse(DrawContext dc, int level, Sector tileSector, Extent extent) {
+		double radius = dc.getGlobe().getRadius();
+		double cellHeight = sector.getDeltaLatRadians() * radius / levelHeights[level];
+		double cellWidth = sector.getDeltaLonRadians() * radius * tileSector.getCentroid().getLatitude().cos() / levelWidths[level];
+		double cellSize = Math.max(cellHeight, cellWidth);
+		double distance = Math.max(1.0, dc.getView().getEyePoint().distanceTo3(extent.getCenter()) - extent.getRadius());
+		return cellSize > SPLIT_CELL_SIZE_IN_PIXELS * dc.getView().computePixelSizeAtDistance(distance);
+	}
+
+	// Generates a tile on a background thread unless already requested, or
+	// takes it from the tiles generated ahead
+	protected void requestTile(final int level, final int column, final int row) {
+		final Long index = getTileIndex(level, column, row);
+		final SurfaceFrameKey levelKey = getLevelKey(level);
+		Tile prefetchedTile = takePrefetchedTile(levelKey, index);
+		if (prefetchedTile != null) {
+			Tile previousTile = tileCache.get(index);
+			tileCache.put(index, reuseImage(prefetchedTile, previousTile, computeDelta(prefetchedTile, previousTile)));
+			return;
+		}
+		if (isPrefetched(levelKey.getFrame(), index) || pendingTileSet.contains(index) || pendingTileSet.size() >= MAX_PENDING_TILE_COUNT) {
+			return;
+		}
+		pendingTileSet.add(index);
+
+		final SurfaceModel model = this.model;
+		final Sector layerSector = this.sector;
+		final int[] layerLevelWidths = this.levelWidths;
+		final int x = column * tileSize;
+		final int y = row * tileSize;
+		final int width = Math.min(tileSize, levelWidths[level] - x);
+		final int height = Math.min(tileSize, levelHeights[level] - y);
+		final Sector tileSector = getTileSector(level, column, row);
+		executor.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Tile tile = generateTile(model, levelKey, x, y, width, height, tileSector);
+					Tile previousTile;
+					synchronized (SurfaceModelTileLayer.this) {
+						previousTile = tileCache.get(index);
+					}
+					SurfaceFrameDelta delta = computeDelta(tile, previousTile);
+					synchronized (SurfaceModelTileLayer.this) {
+						// Drop tiles of a model, sector or field that has since changed
+						if (model == SurfaceModelTileLayer.this.model && layerSector == sector && layerLevelWidths == levelWidths) {
+							// Upload whole if the previous tile has since been replaced
+							if (tileCache.get(index) == previousTile) {
+								tile = reuseImage(tile, previousTile, delta);
+							}
+							tileCache.put(index, tile);
+						}
+					}
+				} catch (RuntimeException e) {
+					Logging.logger().log(Level.SEVERE, "Unable to generate tile " + level + "/" + column + "/" + row, e);
+				} finally {
+					synchronized (SurfaceModelTileLayer.this) {
+						pendingTileSet.remove(index);
+					}
+				}
+				firePropertyChange(AVKey.LAYER, null, SurfaceModelTileLayer.this);
+			}
+		});
+	}
+
+	// Generates the selected tiles of the following frames, nearest frame
+	// first, a few at a time
+	protected void prefetchTiles() {
+		// The last frame of a sequence repeats frame 0, so animation skips it
+		int cycleLength = frameKey.getFrames() - 1;
+		int frameCount = Math.min(prefetchFrameCount, cycleLength - 1);
+		int pendingCount = 0;
+		for (Map<Long, Future<?>> futureMap : prefetchFutureMaps.values()) {
+			pendingCount += futureMap.size();
+		}
+		for (int offset = 1; offset <= frameCount; offset++) {
+			int frame = (frameKey.getFrame() + offset) % cycleLength;
+			for (Long index : selectedTileIndexList) {
+				if (pendingCount >= MAX_PENDING_PREFETCH_COUNT) {
+					return;
+				}
+				if (!isPrefetched(frame, index)) {
+					requestPrefetch(frame, index);
+					pendingCount++;
+				}
+			}
+		}
+	}
+
+	// Generates a tile of a following frame on a background thread
+	protected void requestPrefetch(final int frame, final Long index) {
+		final int level = (int) (index >>> 56);
+		final int row = (int) ((index >>> 28) & 0xFFFFFFFL);
+		final int column = (int) (index & 0xFFFFFFFL);
+		final SurfaceModel model = this.model;
+		final SurfaceFrameKey levelKey = getLevelKey(level).withFrame(frame);
+		final int x = column * tileSize;
+		final int y = row * tileSize;
+		final int width = Math.min(tileSize, levelWidths[level] - x);
+		final int height = Math.min(tileSize, levelHeights[level] - y);
+		final Sector tileSector = getTileSector(level, column, row);
+		final int generation = prefetchGeneration;
+		Future<?> future = executor.submit(new Runnable() {
+
+			@Override
+			public void run() {
+				Tile tile = null;
+				try {
+					tile = generateTile(model, levelKey, x, y, width, height, tileSector);
+				} catch (RuntimeException e) {
+					Logging.logger().log(Level.SEVERE, "Unable to generate tile " + level + "/" + column + "/" + row + " of frame " + frame, e);
+				}
+				synchronized (SurfaceModelTileLayer.this) {
+					// Drop tiles of a sequence or frame that has since been discarded
+					Map<Long, Future<?>> futureMap = prefetchFutureMaps.get(frame);
+					if (generation != prefetchGeneration || futureMap == null || futureMap.remove(index) == null) {
+						return;
+					}
+					if (futureMap.isEmpty()) {
+						prefetchFutureMaps.remove(frame);
+					}
+					if (tile != null) {
+						Map<Long, Tile> tileMap = prefetchedTileMaps.get(frame);
+						if (tileMap == null) {
+							tileMap = new HashMap<Long, Tile>();
+							prefetchedTileMaps.put(frame, tileMap);
+						}
+						tileMap.put(index, tile);
+					}
+				}
+				firePropertyChange(AVKey.LAYER, null, SurfaceModelTileLayer.this);
+			}
+		});
+		Map<Long, Future<?>> futureMap = prefetchFutureMaps.get(frame);
+		if (futureMap == null) {
+			futureMap = new HashMap<Long, Future<?>>();
+			prefetchFutureMaps.put(frame, futureMap);
+		}
+		futureMap.put(index, future);
+	}
+
+	// Returns true if the tile of the frame is generated ahead or in progress
+	protected boolean isPrefetched(int frame, Long index) {
+		Map<Long, Tile> tileMap = prefetchedTileMaps.get(frame);
+		Map<Long, Future<?>> futureMap = prefetchFutureMaps.get(frame);
+		return (tileMap != null && tileMap.containsKey(index)) || (futureMap != null && futureMap.containsKey(index));
+	}
+
+	// Removes and provides the tile generated ahead for the level key, if any
+	protected Tile takePrefetchedTile(SurfaceFrameKey levelKey, Long index) {
+		Map<Long, Tile> tileMap = prefetchedTileMaps.get(levelKey.getFrame());
+		if (tileMap == null) {
+			return null;
+		}
+		Tile tile = tileMap.remove(index);
+		if (tileMap.isEmpty()) {
+			prefetchedTileMaps.remove(levelKey.getFrame());
+		}
+		return tile != null && tile.levelKey.equals(levelKey) ? tile : null;
+	}
+
+	// Keeps the tiles generated ahead for the current frame, until taken, and
+	// the frames that follow it, cancelling the others
+	protected void retainPrefetchWindow() {
+		if (frameKey == null) {
+			discardPrefetchedTiles();
+			return;
+		}
+		int cycleLength = Math.max(1, frameKey.getFrames() - 1);
+		Set<Integer> frameSet = new HashSet<Integer>(prefetchedTileMaps.keySet());
+		frameSet.addAll(prefetchFutureMaps.keySet());
+		for (Integer frame : frameSet) {
+			int offset = ((frame - frameKey.getFrame()) % cycleLength + cycleLength) % cycleLength;
+			if (offset <= prefetchFrameCount) {
+				continue;
+			}
+			prefetchedTileMaps.remove(frame);
+			Map<Long, Future<?>> futureMap = prefetchFutureMaps.remove(frame);
+			if (futureMap != null) {
+				for (Future<?> future : futureMap.values()) {
+					future.cancel(false);
+				}
+			}
+		}
+	}
+
+	// Discards and cancels all tiles generated ahead
+	protected void discardPrefetchedTiles() {
+		for (Map<Long, Future<?>> futureMap : prefetchFutureMaps.values()) {
+			for (Future<?> future : futureMap.values()) {
+				future.cancel(false);
+			}
+		}
+		prefetchFutureMaps.clear();
+		prefetchedTileMaps.clear();
+		prefetchGeneration++;
+	}
+
+	// Generates the image of a tile from the model
+	protected static Tile generateTile(SurfaceModel model, SurfaceFrameKey levelKey, int x, int y, int width, int height, Sector tileSector) {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		model.getArgbTile(levelKey, x, y, width, height, data, 0, width);
+		return new Tile(levelKey, new TileImage(image, tileSector), data);
+	}
+
+	// Computes the delta from the previous tile to the tile, or null if the
+	// tile is to get a new image
+	protected static SurfaceFrameDelta computeDelta(Tile tile, Tile previousTile) {
+		if (previousTile == null || previousTile.argb.length != tile.argb.length || !(previousTile.surfaceImage instanceof TileImage)) {
+			return null;
+		}
+		BufferedImage image = ((TileImage) previousTile.surfaceImage).image;
+		return SurfaceFrameDelta.compute(previousTile.argb, tile.argb, image.getWidth(), image.getHeight(), SurfaceFrameDelta.DEFAULT_BLOCK_SIZE,
+				(int) (MAX_DIRTY_CELL_FRACTION * tile.argb.length));
+	}
+
+	// Provides the tile to cache in place of the previous tile: a tile that
+	// keeps the image of the previous tile, unchanged or updated by the delta,
+	// or the tile itself, with a new image, if there is no delta
+	protected static Tile reuseImage(Tile tile, Tile previousTile, SurfaceFrameDelta delta) {
+		if (delta == null) {
+			return tile;
+		}
+		if (delta.isEmpty()) {
+			return new Tile(tile.levelKey, previousTile.surfaceImage, previousTile.argb);
+		}
+		((TileImage) previousTile.surfaceImage).addDelta(delta);
+		return new Tile(tile.levelKey, previousTile.surfaceImage, tile.argb);
+	}
+
+	// Provides the field size of every level
+	protected void computeLevels() {
+		if (frameKey == null) {
+			levelWidths = new int[0];
+			levelHeights = new int[0];
+			return;
+		}
+
+		// Levels coarser than the nominal resolution, until one tile fits all
+		int coarseLevelCount = 0;
+		while ((Math.max(frameKey.getWidth(), frameKey.getHeight()) >> coarseLevelCount) > tileSize) {
+			coarseLevelCount++;
+		}
+		int levelCount = coarseLevelCount + 1 + extraLevelCount;
+		levelWidths = new int[levelCount];
+		levelHeights = new int[levelCount];
+		for (int level = 0; level < levelCount; level++) {
+			double scale = Math.pow(2.0, level - coarseLevelCount);
+			levelWidths[level] = Math.max(1, (int) Math.ceil(frameKey.getWidth() * scale));
+			levelHeights[level] = Math.max(1, (int) Math.ceil(frameKey.getHeight() * scale));
+		}
+	}
+
+	// Provides the frame key of the field at a level
+	protected SurfaceFrameKey getLevelKey(int level) {
+		return new SurfaceFrameKey(frameKey.getType(), levelWidths[level], levelHeights[level], frameKey.getGridIncrement(), frameKey.getFrames(), frameKey.getFrame(),
+				frameKey.getAlphaWeight());
+	}
+
+	protected int getColumnCount(int level) {
+		return (levelWidths[level] + tileSize - 1) / tileSize;
+	}
+
+	protected int getRowCount(int level) {
+		return (levelHeights[level] + tileSize - 1) / tileSize;
+	}
+
+	// Provides the sector covered by the cells of a tile
+	protected Sector getTileSector(int level, int column, int row) {
+		double x0 = (double) (column * tileSize) / levelWidths[level];
+		double x1 = Math.min(1.0, (double) ((column + 1) * tileSize) / levelWidths[level]);
+		double y0 = (double) (row * tileSize) / levelHeights[level];
+		double y1 = Math.min(1.0, (double) ((row + 1) * tileSize) / levelHeights[level]);
+		double minLon = sector.getMinLongitude().degrees + x0 * sector.getDeltaLonDegrees();
+		double maxLon = sector.getMinLongitude().degrees + x1 * sector.getDeltaLonDegrees();
+		double minLat = sector.getMaxLatitude().degrees - y1 * sector.getDeltaLatDegrees();
+		double maxLat = sector.getMaxLatitude().degrees - y0 * sector.getDeltaLatDegrees();
+		return new Sector(Angle.fromDegrees(minLat), Angle.fromDegrees(maxLat), Angle.fromDegrees(minLon), Angle.fromDegrees(maxLon));
+	}
+
+	protected Tile getTile(int level, int column, int row) {
+		return tileCache.get(getTileIndex(level, column, row));
+	}
+
+	// Packs the level, row and column of a tile into one index
+	protected static Long getTileIndex(int level, int column, int row) {
+		return ((long) level << 56) | ((long) row << 28) | column;
+	}
+
+}
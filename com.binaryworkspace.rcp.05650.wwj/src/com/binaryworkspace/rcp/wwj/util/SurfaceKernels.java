@@ -0,0 +1,223 @@
+package com.binaryworkspace.rcp.wwj.util;
+
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The inner loops of surface evaluation and color mapping: combining the
+ * column and row terms of the Sine Wave Surface, shifting a field to a frame,
+ * and mapping magnitudes to packed ARGB through a lookup table.
+ * <p>
+ * This class is the scalar implementation and runs on any Java 8 runtime.
+ * getInstance() provides the implementation to use: on a runtime with the
+ * incubating Vector API (module jdk.incubator.vector, JDK 17 and later) a SIMD
+ * implementation, VectorSurfaceKernels, is loaded reflectively from the
+ * multi-release overlay of the bundle (META-INF/versions/17, built from the
+ * src-jdk17 source folder). The overlay requires a framework with
+ * multi-release bundle support, OSGi R7 (Equinox 3.13, Eclipse 4.8) or later.
+ * The SIMD implementation is only used if it loads, and if it produces results
+ * bit-identical to this class on a set of reference inputs; otherwise, for any
+ * reason, including the Equinox 3.10 of the Eclipse 4.5.1 target platform, the
+ * scalar implementation is used.
+ * <p>
+ * Every method writes count results and returns nothing; the arithmetic of
+ * each result is fixed (no fused multiply-add), so any implementation
+ * produces the same bits.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class SurfaceKernels {
+
+	private static final Logger LOGGER = Logger.getLogger(SurfaceKernels.class.getName());
+
+	/**
+	 * Fully qualified name of the SIMD implementation in the multi-release
+	 * overlay.
+	 */
+	private static final String VECTOR_KERNELS_CLASS_NAME = "com.binaryworkspace.rcp.wwj.util.VectorSurfaceKernels";
+
+	/**
+	 * System property that, when set to true, disables the SIMD implementation.
+	 */
+	public static final String SCALAR_PROPERTY = "com.binaryworkspace.rcp.wwj.scalarKernels";
+
+	private static class InstanceHolder {
+		private static final SurfaceKernels INSTANCE = loadInstance();
+	}
+
+	/**
+	 * Provides the kernels to use, the SIMD implementation when it is
+	 * available and verified, otherwise the scalar implementation.
+	 *
+	 * @return
+	 */
+	public static SurfaceKernels getInstance() {
+		return InstanceHolder.INSTANCE;
+	}
+
+	/**
+	 * Provides the scalar implementation.
+	 *
+	 * @return
+	 */
+	public static SurfaceKernels getScalarInstance() {
+		return new SurfaceKernels();
+	}
+
+	/**
+	 * Provides a short name of the implementation, for logging.
+	 *
+	 * @return
+	 */
+	public String getName() {
+		return "Scalar";
+	}
+
+	/**
+	 * Combines the column terms of a row with the row term into raw Sine Wave
+	 * Surface values: <code>(float) (0.5 * columnSine * rowSine + 0.5)</code>.
+	 *
+	 * @param columnSines
+	 * @param columnOffset
+	 *            index of the first column term
+	 * @param rowSine
+	 * @param rawValues
+	 * @param offset
+	 *            index of the first raw value
+	 * @param count
+	 */
+	public void combine(double[] columnSines, int columnOffset, double rowSine, float[] rawValues, int offset, int count) {
+		for (int index = 0; index < count; index++) {
+			rawValues[offset + index] = (float) (0.5 * columnSines[columnOffset + index] * rowSine + 0.5);
+		}
+	}
+
+	/**
+	 * Shifts raw values to a frame and wraps them modulo 1:
+	 * <code>(rawValue + shift) % 1</code>. Source and target may be the same
+	 * array and offset.
+	 *
+	 * @param rawValues
+	 * @param sourceOffset
+	 * @param shift
+	 *            on the interval [0, 1]
+	 * @param magnitudes
+	 * @param targetOffset
+	 * @param count
+	 */
+	public void shiftAndWrap(float[] rawValues, int sourceOffset, float shift, float[] magnitudes, int targetOffset, int count) {
+		for (int index = 0; index < count; index++) {
+			magnitudes[targetOffset + index] = (rawValues[sourceOffset + index] + shift) % 1;
+		}
+	}
+
+	/**
+	 * Maps percentages to packed ARGB colors through a lookup table, replacing
+	 * the alpha of the table: the color of a percentage p is
+	 * <code>alphaBits | (table[(int) (bounded(p) * scale + 0.5f)] &amp; 0x00FFFFFF)</code>
+	 * , where bounded(p) bounds p to the interval [0, 1].
+	 *
+	 * @param percentages
+	 * @param sourceOffset
+	 * @param table
+	 *            scale + 1 packed colors
+	 * @param scale
+	 *            the number of table steps over the interval [0, 1]
+	 * @param alphaBits
+	 *            the alpha octet shifted into the top byte
+	 * @param argb
+	 * @param targetOffset
+	 * @param count
+	 */
+	public void lookupArgb(float[] percentages, int sourceOffset, int[] table, float scale, int alphaBits, int[] argb, int targetOffset, int count) {
+		for (int index = 0; index < count; index++) {
+			int tableIndex = (int) (ColorUtils.getBoundedDecimal(percentages[sourceOffset + index]) * scale + 0.5f);
+			argb[targetOffset + index] = alphaBits | (table[tableIndex] & 0x00FFFFFF);
+		}
+	}
+
+	// Loads the SIMD implementation if it is available and verified
+	private static SurfaceKernels loadInstance() {
+		SurfaceKernels scalarKernels = new SurfaceKernels();
+		if (Boolean.getBoolean(SCALAR_PROPERTY)) {
+			return scalarKernels;
+		}
+		try {
+			Class<?> vectorClass = Class.forName(VECTOR_KERNELS_CLASS_NAME, true, SurfaceKernels.class.getClassLoader());
+			SurfaceKernels vectorKernels = (SurfaceKernels) vectorClass.getDeclaredConstructor().newInstance();
+			if (matches(scalarKernels, vectorKernels)) {
+				LOGGER.info("Using " + vectorKernels.getName() + " surface kernels");
+				return vectorKernels;
+			}
+			LOGGER.warning(vectorKernels.getName() + " surface kernels differ from the scalar kernels, using scalar kernels");
+		} catch (Throwable e) {
+			// Missing overlay, Java 8, or a runtime without jdk.incubator.vector
+			LOGGER.log(Level.FINE, "Vector surface kernels unavailable, using scalar kernels", e);
+		}
+		return scalarKernels;
+	}
+
+	/**
+	 * Returns true if two implementations produce bit-identical results on a
+	 * set of reference inputs, including lengths that are not a multiple of
+	 * any vector size and the bounds of each interval.
+	 *
+	 * @param expectedKernels
+	 * @param actualKernels
+	 * @return
+	 */
+	public static boolean matches(SurfaceKernels expectedKernels, SurfaceKernels actualKernels) {
+		int count = 1031;
+		int offset = 3;
+		double[] columnSines = new double[count + offset];
+		for (int index = 0; index < columnSines.length; index++) {
+			columnSines[index] = Math.sin(index * 0.37);
+		}
+		columnSines[offset] = 1.0;
+		columnSines[offset + 1] = -1.0;
+		float[] percentages = new float[count + offset];
+		for (int index = 0; index < percentages.length; index++) {
+			percentages[index] = index / (float) (percentages.length - 1) * 1.2f - 0.1f;
+		}
+		percentages[offset] = Float.NaN;
+		percentages[offset + 1] = 1.0f;
+		percentages[offset + 2] = -0.0f;
+		int[] table = new int[4096];
+		for (int index = 0; index < table.length; index++) {
+			table[index] = 0xFF000000 | (index * 0x010307);
+		}
+
+		for (double rowSine : new double[] { -1.0, -0.3, 0.0, 0.71, 1.0 }) {
+			// Combine
+			float[] expectedRaw = new float[count + offset];
+			float[] actualRaw = new float[count + offset];
+			expectedKernels.combine(columnSines, offset, rowSine, expectedRaw, offset, count);
+			actualKernels.combine(columnSines, offset, rowSine, actualRaw, offset, count);
+			if (!Arrays.equals(expectedRaw, actualRaw)) {
+				return false;
+			}
+
+			// Shift and wrap, in place and out of place
+			for (float shift : new float[] { 0.0f, 0.25f, 37 / 99.0f, 1.0f }) {
+				float[] expectedMagnitudes = new float[count + offset];
+				float[] actualMagnitudes = actualRaw.clone();
+				expectedKernels.shiftAndWrap(expectedRaw, offset, shift, expectedMagnitudes, offset, count);
+				actualKernels.shiftAndWrap(actualMagnitudes, offset, shift, actualMagnitudes, offset, count);
+				for (int index = offset; index < count + offset; index++) {
+					if (Float.floatToIntBits(expectedMagnitudes[index]) != Float.floatToIntBits(actualMagnitudes[index])) {
+						return false;
+					}
+				}
+			}
+		}
+
+		// Look up
+		int[] expectedArgb = new int[count + offset];
+		int[] actualArgb = new int[count + offset];
+		expectedKernels.lookupArgb(percentages, offset, table, table.length - 1, 0x80000000, expectedArgb, offset, count);
+		actualKernels.lookupArgb(percentages, offset, table, table.length - 1, 0x80000000, actualArgb, offset, count);
+		return Arrays.equals(expectedArgb, actualArgb);
+	}
+}
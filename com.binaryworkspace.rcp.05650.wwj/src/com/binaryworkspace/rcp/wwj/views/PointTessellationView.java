@@ -1,8 +1,8 @@
 package com.binaryworkspace.rcp.wwj.views;
 
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.swt.SWT;
@@ -16,6 +16,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Sash;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.part.ViewPart;
 
 import com.binaryworkspace.rcp.wwj.compositions.AnimationControlComposition;
@@ -28,9 +29,11 @@ import com.binaryworkspace.rcp.wwj.compositions.ScaleIntControlComposition;
 import com.binaryworkspace.rcp.wwj.enums.ScaleDoubleType;
 import com.binaryworkspace.rcp.wwj.enums.ScaleIntType;
 import com.binaryworkspace.rcp.wwj.models.SineWaveSurfaceModel;
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameStream;
 import com.binaryworkspace.rcp.wwj.resources.ColorType;
 import com.binaryworkspace.rcp.wwj.resources.Margins;
 import com.binaryworkspace.rcp.wwj.resources.SwtColors;
+import com.binaryworkspace.rcp.wwj.services.WWJService;
 import com.binaryworkspace.rcp.wwj.structures.ColorizedPointGrid;
 import com.binaryworkspace.rcp.wwj.util.WwjUtils;
 
@@ -178,7 +181,7 @@ public class PointTessellationView extends ViewPart implements IScaleDoubleContr
 	 */
 	private final int MIN_POINT_COUNT = 0;
 
-	private final int MAX_POINT_COUNT = 250000;
+	private final int MAX_POINT_COUNT = 1000000;
 
 	private final int INCREMENT_POINT_COUNT = 10000;
 
@@ -209,6 +212,43 @@ public class PointTessellationView extends ViewPart implements IScaleDoubleContr
 	private int frameIndex = 0;
 	
 	private SineWaveSurfaceModel model = new SineWaveSurfaceModel();
+	
+	/**
+	 * Frame Streaming
+	 * <p>
+	 * Magnitude frames are streamed ahead of the animation clock into recycled
+	 * buffers. The frame in use is held until the next frame is taken.
+	 */
+	private final int STREAM_BUFFER_COUNT = 3;
+
+	private SurfaceFrameStream<float[]> magnitudeStream;
+
+	private SurfaceFrameStream.Frame<float[]> magnitudeFrame;
+
+	private int magnitudeStreamPointCount;
+
+	private int nextStreamFrameIndex;
+
+	/**
+	 * Color buffer reused between refreshes
+	 */
+	private int[] colorFrame;
+
+	/**
+	 * The grid shown, and the positions and colors last given to it, which are
+	 * updated in place while the number of points is unchanged. The grid draws
+	 * from copies of these arrays, so the changes are handed to it through its
+	 * update methods, which the rendering thread applies on its next frame.
+	 */
+	private ColorizedPointGrid grid;
+
+	private double[] meshLatitudes;
+
+	private double[] meshLongitudes;
+
+	private double[] meshAltitudes;
+
+	private int[] meshColors;
 
 	private Listener sashListener = new Listener() {
 
@@ -503,6 +543,8 @@ public class PointTessellationView extends ViewPart implements IScaleDoubleContr
 		
 		// Refresh
 		model.setIsCacheOn(false);
+		model.setParallelism(Runtime.getRuntime().availableProcessors());
+		model.setDiskCache(PlatformUI.getWorkbench().getService(WWJService.class).getSurfaceFrameDiskCache());
 		refresh();
 	}
 
@@ -591,50 +633,50 @@ public class PointTessellationView extends ViewPart implements IScaleDoubleContr
 	private void refresh() {
 		// Init Surface variables
 		double surfaceLat = 0.0;
-		double surfaceLon = 0.0;
-		double surfaceElev = 0.0;
 		int width = (int) Math.sqrt(pointCount);
 		int height = (int) Math.sqrt(pointCount);
 		float gridIncrement = 1.0f;
 		
 		// Model data
-		List<float[]> magnitudeFloatArrayList = model.getMagnitudeFloatArrayList(width, height, gridIncrement, MAX_FRAME_INDEX, frameIndex);
-		List<float[]> colorFloatArrayList = model.getColorFloatArrayList(width, height, gridIncrement, MAX_FRAME_INDEX, frameIndex);
+		int cellCount = width * height;
+		float[] magnitudes = takeMagnitudeFrame(width, height, gridIncrement);
+		colorFrame = model.getColorFrame(magnitudes, cellCount, colorFrame);
+		
+		// Update the shown grid in place when the number of points is unchanged
+		if (grid != null && grid.getNumPositions() == cellCount) {
+			updateGrid(width, height, magnitudes, cellCount);
+			return;
+		}
 		
-		// Point positions
-		List<Position> meshPositions = new ArrayList<Position>(width * height);
-		List<Color> meshColors = new ArrayList<Color>(width * height);
+		// Point positions, in primitive arrays
+		meshLatitudes = new double[cellCount];
+		meshLongitudes = new double[cellCount];
+		meshAltitudes = new double[cellCount];
+		int cellIndex = 0;
 		for (int yIndex = 0; yIndex < height; yIndex++) {
-			// Get lists for this 'row'
-			float[] magnitudeFloatArray = magnitudeFloatArrayList.get(yIndex);
-			float[] colorFloatArray = colorFloatArrayList.get(yIndex);
-			
 			// Compute the lat for this 'row'
 			surfaceLat = lat + (double) yIndex * (deltaLat / (double) height);
 			
 			// Populate the 'row'
 			for (int xIndex = 0; xIndex < width; xIndex++) {
-				// Add position
-				surfaceLon = lon + (double) xIndex * (deltaLon / (double) width);
-				float magnitude = magnitudeFloatArray[xIndex];
-				surfaceElev = CORNER_ALT + alt * magnitude;
-				meshPositions.add(Position.fromDegrees(surfaceLat, surfaceLon, surfaceElev));
-				
-				// Add color
-				int colorIndex = 3 * xIndex;
-				float red = colorFloatArray[colorIndex];
-				float green = colorFloatArray[colorIndex + 1];
-				float blue = colorFloatArray[colorIndex + 2];
-				meshColors.add(new Color(red, green, blue));
+				meshLatitudes[cellIndex] = surfaceLat;
+				meshLongitudes[cellIndex] = lon + (double) xIndex * (deltaLon / (double) width);
+				meshAltitudes[cellIndex] = CORNER_ALT + alt * magnitudes[cellIndex];
+				cellIndex++;
 			}
 		}
 		
+		// Point colors, the color frame is reused by the next refresh
+		meshColors = Arrays.copyOf(colorFrame, cellCount);
+		
 		// Create the PointGrid shape
-		ColorizedPointGrid grid = new ColorizedPointGrid(cornerPositionList, meshPositions, meshColors, meshPositions.size());
+		grid = new ColorizedPointGrid(cornerPositionList, meshLatitudes.clone(), meshLongitudes.clone(), meshAltitudes.clone(), meshColors.clone(), cellCount);
 		ColorizedPointGrid.Attributes attrs = new ColorizedPointGrid.Attributes();
 		attrs.setPointSize(pointSize);
 		grid.setAttributes(attrs);
 		grid.setAltitudeMode(WorldWind.RELATIVE_TO_GROUND);
+		grid.setLodEnabled(true);
+		grid.setAsyncRegenerationEnabled(true);
 
 		// Renderable Layer
 		RenderableLayer renderableLayer = new RenderableLayer();
@@ -650,6 +692,114 @@ public class PointTessellationView extends ViewPart implements IScaleDoubleContr
 		}
 		activeLayer = renderableLayer;
 	}
+	
+	// Hands the runs of changed positions and colors to the grid, so only those
+	// points are recomputed
+	private void updateGrid(int width, int height, float[] magnitudes, int cellCount) {
+		grid.getAttributes().setPointSize(pointSize);
+		if (grid.getCorners() != cornerPositionList) {
+			grid.setCorners(cornerPositionList);
+		}
+		
+		// Moved points, for which the terrain under them is read again
+		int runStart = -1;
+		int cellIndex = 0;
+		for (int yIndex = 0; yIndex < height; yIndex++) {
+			double surfaceLat = lat + (double) yIndex * (deltaLat / (double) height);
+			for (int xIndex = 0; xIndex < width; xIndex++) {
+				double surfaceLon = lon + (double) xIndex * (deltaLon / (double) width);
+				if (meshLatitudes[cellIndex] != surfaceLat || meshLongitudes[cellIndex] != surfaceLon) {
+					meshLatitudes[cellIndex] = surfaceLat;
+					meshLongitudes[cellIndex] = surfaceLon;
+					if (runStart < 0) {
+						runStart = cellIndex;
+					}
+				} else if (runStart >= 0) {
+					grid.updatePositions(meshLatitudes, meshLongitudes, meshAltitudes, runStart, runStart, cellIndex - runStart);
+					runStart = -1;
+				}
+				cellIndex++;
+			}
+		}
+		if (runStart >= 0) {
+			grid.updatePositions(meshLatitudes, meshLongitudes, meshAltitudes, runStart, runStart, cellCount - runStart);
+		}
+		
+		// Raised points, which keep the terrain under them
+		runStart = -1;
+		for (cellIndex = 0; cellIndex < cellCount; cellIndex++) {
+			double surfaceAlt = CORNER_ALT + alt * magnitudes[cellIndex];
+			if (meshAltitudes[cellIndex] != surfaceAlt) {
+				meshAltitudes[cellIndex] = surfaceAlt;
+				if (runStart < 0) {
+					runStart = cellIndex;
+				}
+			} else if (runStart >= 0) {
+				grid.updateAltitudes(meshAltitudes, runStart, runStart, cellIndex - runStart);
+				runStart = -1;
+			}
+		}
+		if (runStart >= 0) {
+			grid.updateAltitudes(meshAltitudes, runStart, runStart, cellCount - runStart);
+		}
+		
+		runStart = -1;
+		for (cellIndex = 0; cellIndex < cellCount; cellIndex++) {
+			if (meshColors[cellIndex] != colorFrame[cellIndex]) {
+				meshColors[cellIndex] = colorFrame[cellIndex];
+				if (runStart < 0) {
+					runStart = cellIndex;
+				}
+			} else if (runStart >= 0) {
+				grid.updateColors(meshColors, runStart, runStart, cellIndex - runStart);
+				runStart = -1;
+			}
+		}
+		if (runStart >= 0) {
+			grid.updateColors(meshColors, runStart, runStart, cellCount - runStart);
+		}
+		
+		wwjGLCanvas.redraw();
+	}
+
+	// Provides the magnitudes of the current frame from the magnitude stream
+	private float[] takeMagnitudeFrame(int width, int height, float gridIncrement) {
+		// Keep the held frame when only the display settings changed
+		boolean isSameSequence = magnitudeStream != null && magnitudeStreamPointCount == pointCount;
+		if (isSameSequence && magnitudeFrame != null && magnitudeFrame.getFrame() == frameIndex) {
+			return magnitudeFrame.getBuffer();
+		}
+
+		// Hand the held frame back before the stream may be replaced
+		if (magnitudeFrame != null) {
+			magnitudeStream.recycle(magnitudeFrame);
+			magnitudeFrame = null;
+		}
+
+		// The stream follows the animation clock, reopen it on a jump
+		if (!isSameSequence || frameIndex != nextStreamFrameIndex) {
+			closeMagnitudeStream();
+			magnitudeStream = model.openMagnitudeStream(width, height, gridIncrement, MAX_FRAME_INDEX, frameIndex, true, STREAM_BUFFER_COUNT);
+			magnitudeStreamPointCount = pointCount;
+		}
+		try {
+			magnitudeFrame = magnitudeStream.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while waiting for frame: " + frameIndex, e);
+		}
+		nextStreamFrameIndex = (magnitudeFrame.getFrame() + 1) % magnitudeStream.getFrameCount();
+		return magnitudeFrame.getBuffer();
+	}
+
+	// Stops the magnitude stream
+	private void closeMagnitudeStream() {
+		if (magnitudeStream != null) {
+			magnitudeStream.close();
+			magnitudeStream = null;
+		}
+		magnitudeFrame = null;
+	}
 
 	@Override
 	public void setFocus() {
@@ -658,6 +808,7 @@ public class PointTessellationView extends ViewPart implements IScaleDoubleContr
 
 	@Override
 	public void dispose() {
+		closeMagnitudeStream();
 		cameraPositionComposition.dispose();
 		super.dispose();
 	}
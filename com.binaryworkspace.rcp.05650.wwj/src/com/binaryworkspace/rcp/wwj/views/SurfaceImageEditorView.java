@@ -223,7 +223,7 @@ public class SurfaceImageEditorView extends ViewPart {
 
 		// Image
 		BufferedImage image = solidColorSurfaceModel.getBufferedImage(WIDTH_SOLID_SURFACE_IMAGE, HEIGHT_SOLID_SURFACE_IMAGE,
-				AwtColorScheme.getVisibleSpectrum((float) FRAME_INDEX / (float) MAX_FRAME_INDEX));
+				AwtColorScheme.getVisibleSpectrum((float) FRAME_INDEX / (float) MAX_FRAME_INDEX), true);
 		solidSurfaceImage.setImageSource(image, cornerPositionList);
 		solidSurfaceImage.setOpacity(ALPHA_SOLID_SURFACE_IMAGE);
 
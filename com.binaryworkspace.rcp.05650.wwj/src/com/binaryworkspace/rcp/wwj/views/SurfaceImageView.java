@@ -2,7 +2,6 @@ package com.binaryworkspace.rcp.wwj.views;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
-import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -17,6 +16,7 @@ import org.eclipse.swt.widgets.Composite;
 import org.eclipse.swt.widgets.Event;
 import org.eclipse.swt.widgets.Listener;
 import org.eclipse.swt.widgets.Sash;
+import org.eclipse.ui.PlatformUI;
 import org.eclipse.ui.part.ViewPart;
 
 import com.binaryworkspace.rcp.wwj.compositions.AnimationControlComposition;
@@ -28,10 +28,15 @@ import com.binaryworkspace.rcp.wwj.compositions.ScaleDoubleControlComposition;
 import com.binaryworkspace.rcp.wwj.compositions.ScaleIntControlComposition;
 import com.binaryworkspace.rcp.wwj.enums.ScaleDoubleType;
 import com.binaryworkspace.rcp.wwj.enums.ScaleIntType;
+import com.binaryworkspace.rcp.wwj.enums.SurfaceFrameType;
 import com.binaryworkspace.rcp.wwj.models.SineWaveSurfaceModel;
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameKey;
+import com.binaryworkspace.rcp.wwj.models.SurfaceModel;
 import com.binaryworkspace.rcp.wwj.resources.ColorType;
 import com.binaryworkspace.rcp.wwj.resources.Margins;
 import com.binaryworkspace.rcp.wwj.resources.SwtColors;
+import com.binaryworkspace.rcp.wwj.services.WWJService;
+import com.binaryworkspace.rcp.wwj.structures.SurfaceModelTileLayer;
 import com.binaryworkspace.rcp.wwj.util.WwjUtils;
 
 import gov.nasa.worldwind.Model;
@@ -39,9 +44,9 @@ import gov.nasa.worldwind.WorldWind;
 import gov.nasa.worldwind.avlist.AVKey;
 import gov.nasa.worldwind.awt.WorldWindowGLCanvas;
 import gov.nasa.worldwind.geom.Position;
+import gov.nasa.worldwind.geom.Sector;
 import gov.nasa.worldwind.layers.RenderableLayer;
 import gov.nasa.worldwind.render.Polyline;
-import gov.nasa.worldwind.render.SurfaceImage;
 
 /**
  * NASA World Wind example that demonstrates how to overlay a surface image.
@@ -76,9 +81,18 @@ public class SurfaceImageView extends ViewPart implements IScaleDoubleControlCom
 
 	private final String LAYER_NAME = "SURFACE IMAGE";
 
-	private SurfaceImage surfaceImage = new SurfaceImage();
+	private final String SURFACE_LAYER_NAME = "SURFACE IMAGE TILES";
 
-	private SineWaveSurfaceModel model = new SineWaveSurfaceModel();
+	private final SineWaveSurfaceModel sineWaveModel = new SineWaveSurfaceModel();
+
+	private SurfaceModel model = sineWaveModel;
+
+	/**
+	 * The surface is drawn as tiles generated at the resolution the view
+	 * needs, so the image width and height are the nominal resolution of the
+	 * field rather than the size of a single texture.
+	 */
+	private final SurfaceModelTileLayer surfaceLayer = new SurfaceModelTileLayer();
 
 	private Sash sash;
 
@@ -525,10 +539,36 @@ public class SurfaceImageView extends ViewPart implements IScaleDoubleControlCom
 		parent.layout();
 
 		// Refresh
-		model.setIsCacheOn(false);
+		sineWaveModel.setIsCacheOn(false);
+		sineWaveModel.setParallelism(Runtime.getRuntime().availableProcessors());
+		sineWaveModel.setDiskCache(PlatformUI.getWorkbench().getService(WWJService.class).getSurfaceFrameDiskCache());
+		surfaceLayer.setName(SURFACE_LAYER_NAME);
+		surfaceLayer.setPickEnabled(false);
+		surfaceLayer.setModel(model);
+		WwjUtils.insertBeforeCompass(wwjModel, surfaceLayer);
 		refresh();
 	}
 
+	/**
+	 * Sets the model the surface image is generated from, e.g. a data-backed
+	 * field. The default model is a SineWaveSurfaceModel.
+	 * 
+	 * @param model
+	 */
+	public void setModel(SurfaceModel model) {
+		this.model = model;
+		surfaceLayer.setModel(model);
+	}
+
+	/**
+	 * Provides the model the surface image is generated from.
+	 * 
+	 * @return
+	 */
+	public SurfaceModel getModel() {
+		return model;
+	}
+
 	@Override
 	public void refreshFrameIndex(int frameIndex) {
 		this.frameIndex = frameIndex;
@@ -604,12 +644,13 @@ public class SurfaceImageView extends ViewPart implements IScaleDoubleControlCom
 		cornerPositions.add(Position.fromDegrees(upperLat, upperLon, CORNER_ALT));
 		cornerPositions.add(Position.fromDegrees(upperLat, lowerLon, CORNER_ALT));
 
-		// Image
-		BufferedImage image = model.getBufferedImage(imageWidth, imageHeight, (float) gridSize, MAX_FRAME_INDEX, frameIndex, (float) alpha);
-		surfaceImage.setImageSource(image, cornerPositions);
+		// Surface tiles
+		SurfaceFrameKey key = new SurfaceFrameKey(SurfaceFrameType.IMAGE, imageWidth, imageHeight, (float) gridSize, MAX_FRAME_INDEX, frameIndex, (float) alpha);
+		surfaceLayer.setSector(Sector.fromDegrees(lowerLat, upperLat, lowerLon, upperLon));
+		surfaceLayer.setFrameKey(key);
 
 		// Polyline
-		Polyline polyline = new Polyline(surfaceImage.getCorners(), 0);
+		Polyline polyline = new Polyline(cornerPositions, 0);
 		polyline.setFollowTerrain(true);
 		polyline.setClosed(true);
 		polyline.setPathType(Polyline.RHUMB_LINE);
@@ -619,7 +660,6 @@ public class SurfaceImageView extends ViewPart implements IScaleDoubleControlCom
 		RenderableLayer renderableLayer = new RenderableLayer();
 		renderableLayer.setName(LAYER_NAME);
 		renderableLayer.setPickEnabled(false);
-		renderableLayer.addRenderable(surfaceImage);
 		renderableLayer.addRenderable(polyline);
 
 		// Update Active Layer
@@ -638,6 +678,7 @@ public class SurfaceImageView extends ViewPart implements IScaleDoubleControlCom
 
 	@Override
 	public void dispose() {
+		surfaceLayer.dispose();
 		cameraPositionComposition.dispose();
 		super.dispose();
 	}
@@ -602,7 +602,7 @@ public class SurfacePolygonsView extends ViewPart implements IScaleDoubleControl
 	// Helper function for Side Attributes
 	private ShapeAttributes getSideAttributes(double colorPercentage) {
 		ShapeAttributes sideAttributes = new BasicShapeAttributes();
-		sideAttributes.setInteriorMaterial(new Material(AwtColorScheme.getVisibleSpectrum((float) colorPercentage)));
+		sideAttributes.setInteriorMaterial(new Material(AwtColorScheme.getVisibleSpectrumLut().getColor((float) colorPercentage)));
 		sideAttributes.setOutlineOpacity(0.5);
 		sideAttributes.setInteriorOpacity(0.5);
 		sideAttributes.setOutlineMaterial(Material.BLACK);
@@ -616,7 +616,7 @@ public class SurfacePolygonsView extends ViewPart implements IScaleDoubleControl
 	// Helper function for Cap Attributes
 	private ShapeAttributes getCapAttributes(ShapeAttributes sideAttributes, double colorPercentage) {
 		ShapeAttributes capAttributes = new BasicShapeAttributes(sideAttributes);
-		capAttributes.setInteriorMaterial(new Material(AwtColorScheme.getVisibleSpectrum((float) colorPercentage)));
+		capAttributes.setInteriorMaterial(new Material(AwtColorScheme.getVisibleSpectrumLut().getColor((float) colorPercentage)));
 		capAttributes.setInteriorOpacity(0.8);
 		capAttributes.setDrawInterior(true);
 		capAttributes.setEnableLighting(true);
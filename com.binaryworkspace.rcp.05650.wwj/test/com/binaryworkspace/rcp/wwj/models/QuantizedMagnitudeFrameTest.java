@@ -0,0 +1,94 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Checks the documented quantization error of QuantizedMagnitudeFrame, |q - m|
+ * <= scale / 2 plus float rounding, against the frames of
+ * SineWaveSurfaceModel.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class QuantizedMagnitudeFrameTest {
+
+	private static final int WIDTH = 300;
+
+	private static final int HEIGHT = 200;
+
+	private static final float GRID_INCREMENT = 1.0f;
+
+	private static final int FRAMES = 100;
+
+	@Test
+	public void eightBitErrorIsWithinHalfAStep() {
+		assertErrorWithinHalfAStep(8);
+	}
+
+	@Test
+	public void sixteenBitErrorIsWithinHalfAStep() {
+		assertErrorWithinHalfAStep(16);
+	}
+
+	@Test
+	public void cachedRowsMatchQuantizedFrame() {
+		SineWaveSurfaceModel model = new SineWaveSurfaceModel();
+		model.setIsCacheOn(true);
+		model.setCacheQuantizationBits(8);
+		float[] magnitudes = new SineWaveSurfaceModel().getMagnitudeFrame(WIDTH, HEIGHT, GRID_INCREMENT, FRAMES, 7, null);
+		QuantizedMagnitudeFrame quantizedFrame = QuantizedMagnitudeFrame.quantize(magnitudes, WIDTH, HEIGHT, 8);
+		List<float[]> rows = model.getMagnitudeFloatArrayList(WIDTH, HEIGHT, GRID_INCREMENT, FRAMES, 7);
+		assertEquals(HEIGHT, rows.size());
+		for (int yIndex = 0; yIndex < HEIGHT; yIndex++) {
+			for (int xIndex = 0; xIndex < WIDTH; xIndex++) {
+				int cellIndex = yIndex * WIDTH + xIndex;
+				assertEquals(quantizedFrame.getMagnitude(cellIndex), rows.get(yIndex)[xIndex], 0.0f);
+			}
+		}
+	}
+
+	@Test
+	public void constantFrameIsRestoredExactly() {
+		float[] magnitudes = new float[64];
+		Arrays.fill(magnitudes, 0.25f);
+		QuantizedMagnitudeFrame quantizedFrame = QuantizedMagnitudeFrame.quantize(magnitudes, 8, 8, 8);
+		assertEquals(0.0f, quantizedFrame.getScale(), 0.0f);
+		for (int cellIndex = 0; cellIndex < magnitudes.length; cellIndex++) {
+			assertEquals(0.25f, quantizedFrame.getMagnitude(cellIndex), 0.0f);
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unsupportedBitsAreRejected() {
+		QuantizedMagnitudeFrame.quantize(new float[4], 2, 2, 12);
+	}
+
+	// Quantizes frames of the model and checks every restored cell
+	private static void assertErrorWithinHalfAStep(int bits) {
+		SineWaveSurfaceModel model = new SineWaveSurfaceModel();
+		float[] restored = new float[WIDTH * HEIGHT];
+		for (int frame = 0; frame < FRAMES; frame += 9) {
+			float[] magnitudes = model.getMagnitudeFrame(WIDTH, HEIGHT, GRID_INCREMENT, FRAMES, frame, null);
+			QuantizedMagnitudeFrame quantizedFrame = QuantizedMagnitudeFrame.quantize(magnitudes, WIDTH, HEIGHT, bits);
+
+			// Magnitudes on [0, 1] take steps of at most 1 / (2^bits - 1)
+			assertEquals(bits, quantizedFrame.getBits());
+			assertTrue(quantizedFrame.getScale() <= 1.0f / ((1 << bits) - 1));
+
+			// Half a step, plus the float rounding of the restore
+			float maximumError = quantizedFrame.getMaximumError();
+			assertTrue(maximumError <= 0.5f * quantizedFrame.getScale() + 4.0f * Math.ulp(1.0f));
+			quantizedFrame.getMagnitudes(0, magnitudes.length, restored, 0);
+			for (int cellIndex = 0; cellIndex < magnitudes.length; cellIndex++) {
+				assertEquals("frame " + frame + ", cell " + cellIndex, magnitudes[cellIndex], quantizedFrame.getMagnitude(cellIndex), maximumError);
+				assertEquals(quantizedFrame.getMagnitude(cellIndex), restored[cellIndex], 0.0f);
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+package com.binaryworkspace.rcp.wwj.models;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.binaryworkspace.rcp.wwj.resources.VisibleSpectrumLut;
+
+/**
+ * Checks that a SurfaceFrameDelta turns the previous frame into the next frame
+ * and that its dirty regions cover exactly the dirty blocks, and that the
+ * images SineWaveSurfaceModel decodes from its keyframes and deltas match the
+ * computed images.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class SurfaceFrameDeltaTest {
+
+	private static final int WIDTH = 100;
+
+	private static final int HEIGHT = 70;
+
+	private static final int BLOCK_SIZE = 16;
+
+	@Test
+	public void deltaTurnsPreviousIntoNext() {
+		Random random = new Random(11);
+		for (int patchCount = 0; patchCount < 20; patchCount++) {
+			int[] previous = getRandomFrame(random);
+			int[] next = previous.clone();
+			for (int patch = 0; patch < patchCount; patch++) {
+				changePatch(next, random);
+			}
+			SurfaceFrameDelta delta = SurfaceFrameDelta.compute(previous, next, WIDTH, HEIGHT, BLOCK_SIZE);
+			assertEquals(patchCount == 0, delta.isEmpty());
+			int[] decoded = previous.clone();
+			delta.applyTo(decoded);
+			assertArrayEquals("patches " + patchCount, next, decoded);
+		}
+	}
+
+	@Test
+	public void dirtyRegionsCoverExactlyTheDirtyBlocks() {
+		Random random = new Random(13);
+		for (int trial = 0; trial < 50; trial++) {
+			int[] previous = getRandomFrame(random);
+			int[] next = previous.clone();
+			for (int patch = random.nextInt(6); patch >= 0; patch--) {
+				changePatch(next, random);
+			}
+			SurfaceFrameDelta delta = SurfaceFrameDelta.compute(previous, next, WIDTH, HEIGHT, BLOCK_SIZE);
+
+			// Every cell lies in at most one region, and in one exactly if its
+			// block has a changed cell
+			int[] coverCounts = new int[WIDTH * HEIGHT];
+			int coveredCellCount = 0;
+			for (Rectangle region : delta.getDirtyRegions()) {
+				assertTrue("region " + region + " outside the frame", region.x >= 0 && region.y >= 0 && region.x + region.width <= WIDTH && region.y + region.height <= HEIGHT);
+				for (int y = region.y; y < region.y + region.height; y++) {
+					for (int x = region.x; x < region.x + region.width; x++) {
+						coverCounts[y * WIDTH + x]++;
+						coveredCellCount++;
+					}
+				}
+			}
+			for (int y = 0; y < HEIGHT; y++) {
+				for (int x = 0; x < WIDTH; x++) {
+					int expectedCount = isBlockChanged(previous, next, x / BLOCK_SIZE, y / BLOCK_SIZE) ? 1 : 0;
+					assertEquals("trial " + trial + ", cell " + x + ", " + y, expectedCount, coverCounts[y * WIDTH + x]);
+				}
+			}
+			assertEquals(delta.getDirtyCellCount(), coveredCellCount);
+		}
+	}
+
+	@Test
+	public void deltaOverTheDirtyCellCountIsNotComputed() {
+		Random random = new Random(17);
+		int[] previous = getRandomFrame(random);
+		int[] next = previous.clone();
+		next[0] ^= 1;
+		assertEquals(BLOCK_SIZE * BLOCK_SIZE, SurfaceFrameDelta.compute(previous, next, WIDTH, HEIGHT, BLOCK_SIZE, BLOCK_SIZE * BLOCK_SIZE).getDirtyCellCount());
+		assertNull(SurfaceFrameDelta.compute(previous, next, WIDTH, HEIGHT, BLOCK_SIZE, BLOCK_SIZE * BLOCK_SIZE - 1));
+		assertNull(SurfaceFrameDelta.compute(previous, getRandomFrame(random), WIDTH, HEIGHT, BLOCK_SIZE, WIDTH * HEIGHT / 2));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void blockSizeBelowOneIsRejected() {
+		SurfaceFrameDelta.compute(new int[WIDTH * HEIGHT], new int[WIDTH * HEIGHT], WIDTH, HEIGHT, 0);
+	}
+
+	@Test
+	public void deltaCachedImagesMatchComputedImages() {
+		// A coarse table and many frames a period, so consecutive frames
+		// differ in few blocks
+		int frames = 2000;
+		SineWaveSurfaceModel expectedModel = new SineWaveSurfaceModel();
+		expectedModel.setColorLut(new VisibleSpectrumLut(4));
+		SineWaveSurfaceModel model = new SineWaveSurfaceModel();
+		model.setColorLut(new VisibleSpectrumLut(4));
+		model.setIsCacheOn(true);
+		model.setCacheKeyframeInterval(8);
+
+		// In order, in reverse, and out of order with a cache too small for
+		// every frame, so deltas lose the frames they follow
+		int[] frameOrder = new int[3 * 60];
+		Random random = new Random(19);
+		for (int index = 0; index < 60; index++) {
+			frameOrder[index] = index;
+			frameOrder[60 + index] = 59 - index;
+			frameOrder[120 + index] = random.nextInt(frames);
+		}
+		boolean isDeltaCached = false;
+		for (int index = 0; index < frameOrder.length; index++) {
+			if (index == 120) {
+				model.setCacheCapacityInBytes(6L * 4 * WIDTH * HEIGHT);
+			}
+			int frame = frameOrder[index];
+			int[] expected = getPixels(expectedModel.getBufferedImage(WIDTH, HEIGHT, 1.0f, frames, frame, 0.5f));
+			assertArrayEquals("frame " + frame + " at " + index, expected, getPixels(model.getBufferedImage(WIDTH, HEIGHT, 1.0f, frames, frame, 0.5f)));
+			isDeltaCached |= model.getCache().getSizeInBytes() < 4L * WIDTH * HEIGHT * model.getCache().getEntryCount();
+		}
+		assertTrue("no frame was cached as a delta", isDeltaCached);
+	}
+
+	private static int[] getRandomFrame(Random random) {
+		int[] frame = new int[WIDTH * HEIGHT];
+		for (int index = 0; index < frame.length; index++) {
+			frame[index] = random.nextInt();
+		}
+		return frame;
+	}
+
+	// Changes the cells of a random rectangle, which may be a single cell
+	private static void changePatch(int[] frame, Random random) {
+		int x0 = random.nextInt(WIDTH);
+		int y0 = random.nextInt(HEIGHT);
+		int x1 = Math.min(WIDTH, x0 + 1 + random.nextInt(30));
+		int y1 = Math.min(HEIGHT, y0 + 1 + random.nextInt(30));
+		for (int y = y0; y < y1; y++) {
+			for (int x = x0; x < x1; x++) {
+				frame[y * WIDTH + x] = ~frame[y * WIDTH + x];
+			}
+		}
+	}
+
+	private static boolean isBlockChanged(int[] previous, int[] next, int blockColumn, int blockRow) {
+		for (int y = blockRow * BLOCK_SIZE; y < Math.min(HEIGHT, (blockRow + 1) * BLOCK_SIZE); y++) {
+			for (int x = blockColumn * BLOCK_SIZE; x < Math.min(WIDTH, (blockColumn + 1) * BLOCK_SIZE); x++) {
+				if (previous[y * WIDTH + x] != next[y * WIDTH + x]) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	private static int[] getPixels(BufferedImage image) {
+		return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+	}
+}
@@ -0,0 +1,84 @@
+package com.binaryworkspace.rcp.wwj.resources;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks the colors of VisibleSpectrumLut against the polynomial fit of
+ * AwtColorScheme.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class VisibleSpectrumLutTest {
+
+	/**
+	 * Percentages checked per table sample.
+	 */
+	private static final int SAMPLES_PER_ENTRY = 16;
+
+	@Test
+	public void defaultResolutionIsWithinOneOctet() {
+		VisibleSpectrumLut lut = AwtColorScheme.getVisibleSpectrumLut();
+		assertEquals(AwtColorScheme.DEFAULT_LUT_RESOLUTION, lut.getResolution());
+		assertTrue(getMaximumChannelError(lut) <= 1);
+	}
+
+	@Test
+	public void errorIsBoundedBySlopeOverHalfAStep() {
+		// Largest change of a channel, in octets per unit of percentage
+		int slopeSampleCount = 1 << 16;
+		double maxSlope = 0;
+		int previous = AwtColorScheme.getVisibleSpectrumArgb(0);
+		for (int sample = 1; sample <= slopeSampleCount; sample++) {
+			int current = AwtColorScheme.getVisibleSpectrumArgb(sample / (float) slopeSampleCount);
+			maxSlope = Math.max(maxSlope, getMaximumChannelDifference(previous, current) * (double) slopeSampleCount);
+			previous = current;
+		}
+
+		for (int resolution : new int[] { 2, 16, 256, 1024, 4096 }) {
+			VisibleSpectrumLut lut = new VisibleSpectrumLut(resolution);
+			double bound = maxSlope / (2.0 * (resolution - 1)) + 1;
+			int error = getMaximumChannelError(lut);
+			assertTrue("resolution " + resolution + ": error " + error + " > " + bound, error <= bound);
+		}
+	}
+
+	@Test
+	public void bulkLookupMatchesSingleLookup() {
+		VisibleSpectrumLut lut = new VisibleSpectrumLut(256);
+		float[] percentages = new float[1001];
+		for (int index = 0; index < percentages.length; index++) {
+			percentages[index] = -0.1f + 1.2f * index / (percentages.length - 1);
+		}
+		int[] argb = lut.getArgb(percentages, percentages.length, null);
+		for (int index = 0; index < percentages.length; index++) {
+			assertEquals(lut.getArgb(percentages[index]), argb[index]);
+			assertEquals(lut.getArgb(percentages[index]), lut.getColor(percentages[index]).getRGB());
+		}
+	}
+
+	// Largest difference of any color channel between the table and the
+	// polynomial fit, over a sampling finer than the table
+	private static int getMaximumChannelError(VisibleSpectrumLut lut) {
+		int maxError = 0;
+		int sampleCount = SAMPLES_PER_ENTRY * lut.getResolution();
+		for (int sample = 0; sample <= sampleCount; sample++) {
+			float percentage = sample / (float) sampleCount;
+			int expected = AwtColorScheme.getVisibleSpectrumArgb(percentage);
+			maxError = Math.max(maxError, getMaximumChannelDifference(expected, lut.getArgb(percentage)));
+		}
+		return maxError;
+	}
+
+	// Largest difference of the red, green or blue octets of two colors
+	private static int getMaximumChannelDifference(int argb1, int argb2) {
+		int maxDifference = 0;
+		for (int shift = 0; shift <= 16; shift += 8) {
+			maxDifference = Math.max(maxDifference, Math.abs(((argb1 >> shift) & 0xFF) - ((argb2 >> shift) & 0xFF)));
+		}
+		return maxDifference;
+	}
+}
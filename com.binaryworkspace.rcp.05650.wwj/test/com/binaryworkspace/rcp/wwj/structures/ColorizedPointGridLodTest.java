@@ -0,0 +1,92 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.IntBuffer;
+import java.util.BitSet;
+
+import org.junit.Test;
+
+/**
+ * Checks the level-of-detail order of ColorizedPointGrid: that
+ * putLodOrder() puts a permutation of its range, and that the points of every
+ * prefix of the order are exactly those whose rank (see getLodRank()) is at
+ * most that of the last point of the prefix, as CPU picking relies on.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class ColorizedPointGridLodTest {
+
+	/** Counts of 1 and 2, powers of two, their neighbors and other counts. */
+	private static final int[] COUNTS = { 1, 2, 3, 4, 5, 7, 8, 9, 31, 100, 255, 256, 257, 1000 };
+
+	/** Offset of the range in the index buffer, so ranges do not start at 0. */
+	private static final int START = 11;
+
+	@Test
+	public void orderIsAPermutationOfTheRange() {
+		for (int count : COUNTS) {
+			int[] order = getLodOrder(count);
+			BitSet seen = new BitSet();
+			for (int offset : order) {
+				assertTrue("count " + count + ": offset " + offset + " out of range", offset >= 0 && offset < count);
+				assertTrue("count " + count + ": offset " + offset + " repeated", !seen.get(offset));
+				seen.set(offset);
+			}
+			assertEquals(count, seen.cardinality());
+		}
+	}
+
+	@Test
+	public void ranksFollowTheOrder() {
+		for (int count : COUNTS) {
+			int[] order = getLodOrder(count);
+			for (int position = 1; position < count; position++) {
+				assertTrue("count " + count + ": ranks not ascending at " + position, ColorizedPointGrid.getLodRank(order[position - 1], count) < ColorizedPointGrid.getLodRank(order[position], count));
+			}
+		}
+	}
+
+	@Test
+	public void everyPrefixIsTheRanksUpToItsLast() {
+		for (int count : COUNTS) {
+			int[] order = getLodOrder(count);
+			BitSet prefix = new BitSet();
+			for (int length = 1; length <= count; length++) {
+				prefix.set(order[length - 1]);
+				int lastRank = ColorizedPointGrid.getLodRank(order[length - 1], count);
+				for (int offset = 0; offset < count; offset++) {
+					boolean isWithinRank = ColorizedPointGrid.getLodRank(offset, count) <= lastRank;
+					assertEquals("count " + count + ", prefix " + length + ", offset " + offset, prefix.get(offset), isWithinRank);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void halfPrefixTakesEverySecondPoint() {
+		int[] order = getLodOrder(256);
+		BitSet prefix = new BitSet();
+		for (int position = 0; position < 128; position++) {
+			prefix.set(order[position]);
+		}
+		for (int offset = 0; offset < 256; offset++) {
+			assertEquals(offset % 2 == 0, prefix.get(offset));
+		}
+	}
+
+	// The offsets within the range in level-of-detail order
+	private static int[] getLodOrder(int count) {
+		IntBuffer indices = IntBuffer.allocate(START + count);
+		indices.position(START);
+		ColorizedPointGrid.putLodOrder(indices, START, START + count);
+		assertEquals(START + count, indices.position());
+		int[] order = new int[count];
+		for (int position = 0; position < count; position++) {
+			order[position] = indices.get(START + position) - START;
+		}
+		return order;
+	}
+}
@@ -0,0 +1,177 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import gov.nasa.worldwind.geom.Position;
+
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the coalescing and bounding of DirtyIndexRanges, and that the ranges
+ * it joins copy back unchanged values when ColorizedPointGrid applies its
+ * staged updates.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class DirtyIndexRangesTest {
+
+	@Test
+	public void overlappingRangesAreJoined() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges();
+		ranges.add(10, 20);
+		ranges.add(15, 30);
+		ranges.add(5, 12);
+		assertArrayEquals(new int[] { 5, 30 }, ranges.drain());
+	}
+
+	@Test
+	public void adjacentRangesAreJoined() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges();
+		ranges.add(10, 20);
+		ranges.add(20, 25);
+		ranges.add(5, 10);
+		assertArrayEquals(new int[] { 5, 25 }, ranges.drain());
+	}
+
+	@Test
+	public void disjointRangesAreSorted() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges();
+		ranges.add(40, 50);
+		ranges.add(0, 5);
+		ranges.add(20, 30);
+		assertEquals(3, ranges.getRangeCount());
+		assertEquals(25, ranges.getIndexCount());
+		assertArrayEquals(new int[] { 0, 5, 20, 30, 40, 50 }, ranges.drain());
+	}
+
+	@Test
+	public void rangeSpanningSeveralRangesReplacesThem() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges();
+		ranges.add(0, 2);
+		ranges.add(4, 6);
+		ranges.add(8, 10);
+		ranges.add(12, 14);
+		ranges.add(3, 9);
+		assertArrayEquals(new int[] { 0, 2, 3, 10, 12, 14 }, ranges.drain());
+	}
+
+	@Test
+	public void emptyRangeIsIgnored() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges();
+		ranges.add(7, 7);
+		assertTrue(ranges.isEmpty());
+		assertEquals(0, ranges.drain().length);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void reversedRangeIsRejected() {
+		new DirtyIndexRanges().add(5, 4);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeStartIsRejected() {
+		new DirtyIndexRanges().add(-1, 4);
+	}
+
+	@Test
+	public void drainClearsTheRanges() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges();
+		ranges.add(1, 3);
+		ranges.drain();
+		assertTrue(ranges.isEmpty());
+		assertEquals(0, ranges.drain().length);
+	}
+
+	@Test
+	public void closestRangesAreJoinedPastTheBound() {
+		DirtyIndexRanges ranges = new DirtyIndexRanges(3);
+		ranges.add(0, 1);
+		ranges.add(10, 11);
+		ranges.add(30, 31);
+		ranges.add(33, 34);
+		assertArrayEquals(new int[] { 0, 1, 10, 11, 30, 34 }, ranges.drain());
+
+		ranges.add(0, 1);
+		ranges.add(2, 3);
+		ranges.add(20, 21);
+		ranges.add(40, 41);
+		assertArrayEquals(new int[] { 0, 3, 20, 21, 40, 41 }, ranges.drain());
+	}
+
+	@Test
+	public void rangesCoverEveryAddedIndex() {
+		Random random = new Random(7);
+		for (int maxRangeCount : new int[] { 1, 4, DirtyIndexRanges.DEFAULT_MAX_RANGE_COUNT, Integer.MAX_VALUE }) {
+			DirtyIndexRanges ranges = new DirtyIndexRanges(maxRangeCount);
+			BitSet added = new BitSet();
+			for (int count = 0; count < 500; count++) {
+				int start = random.nextInt(10000);
+				int end = start + random.nextInt(20);
+				ranges.add(start, end);
+				added.set(start, end);
+			}
+			int[] drained = ranges.drain();
+			assertTrue(drained.length / 2 <= maxRangeCount);
+
+			BitSet covered = new BitSet();
+			for (int index = 0; index < drained.length; index += 2) {
+				assertTrue("empty range", drained[index] < drained[index + 1]);
+				if (index > 0) {
+					assertTrue("ranges not sorted and apart", drained[index - 1] < drained[index]);
+				}
+				covered.set(drained[index], drained[index + 1]);
+			}
+			BitSet missed = (BitSet) added.clone();
+			missed.andNot(covered);
+			assertTrue("missed indices " + missed, missed.isEmpty());
+			if (maxRangeCount == Integer.MAX_VALUE) {
+				assertEquals(added, covered);
+			}
+		}
+	}
+
+	@Test
+	public void joinedGapsCopyBackUnchangedStagedValues() {
+		int pointCount = 20000;
+		double[] latitudes = new double[pointCount];
+		double[] longitudes = new double[pointCount];
+		double[] altitudes = new double[pointCount];
+		int[] colors = new int[pointCount];
+		for (int index = 0; index < pointCount; index++) {
+			latitudes[index] = index * 0.001;
+			longitudes[index] = -index * 0.001;
+			altitudes[index] = index;
+			colors[index] = 0xFF000000 | index;
+		}
+		ColorizedPointGrid grid = new ColorizedPointGrid(Collections.<Position> emptyList(), latitudes.clone(), longitudes.clone(), altitudes.clone(), colors.clone(), pointCount);
+
+		// More runs than ranges kept, so the ranges are joined over gaps
+		int runCount = 4 * DirtyIndexRanges.DEFAULT_MAX_RANGE_COUNT;
+		double[] changed = new double[] { -1, -1, -1 };
+		int[] changedColors = new int[] { 0xFFFFFFFF, 0xFFFFFFFF, 0xFFFFFFFF };
+		for (int run = 0; run < runCount; run++) {
+			grid.updatePositions(changed, changed, changed, 0, run * 50, changed.length);
+			grid.updateColors(changedColors, 0, run * 50 + 10, changedColors.length);
+		}
+		int[] positionRanges = grid.takeUpdatedPositions();
+		int[] colorRanges = grid.takeUpdatedColors();
+		assertTrue(positionRanges.length / 2 <= DirtyIndexRanges.DEFAULT_MAX_RANGE_COUNT);
+		assertTrue(colorRanges.length / 2 <= DirtyIndexRanges.DEFAULT_MAX_RANGE_COUNT);
+
+		for (int index = 0; index < pointCount; index++) {
+			boolean isPositionChanged = index < runCount * 50 && index % 50 < changed.length;
+			boolean isColorChanged = index < runCount * 50 && index % 50 >= 10 && index % 50 < 10 + changedColors.length;
+			assertEquals(isPositionChanged ? -1 : latitudes[index], grid.latitudes[index], 0.0);
+			assertEquals(isPositionChanged ? -1 : longitudes[index], grid.longitudes[index], 0.0);
+			assertEquals(isPositionChanged ? -1 : altitudes[index], grid.altitudes[index], 0.0);
+			assertEquals(isColorChanged ? 0xFFFFFFFF : colors[index], grid.colors[index]);
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import gov.nasa.worldwind.geom.Angle;
+import gov.nasa.worldwind.geom.Matrix;
+
+import java.awt.Rectangle;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that ScreenPointIndex.query() returns every point whose projection
+ * falls in a pick rectangle, against a scan of all points. Only points on the
+ * viewport can be picked, so the rectangles may extend past the viewport but
+ * points projected off it are not expected.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class ScreenPointIndexTest {
+
+	private static final Rectangle VIEWPORT = new Rectangle(0, 0, 800, 600);
+
+	private static final int POINT_COUNT = 20000;
+
+	@Test
+	public void queryReturnsEveryPointInTheRectangles() {
+		Random random = new Random(3);
+		Matrix modelviewProjection = getModelviewProjection();
+		FloatBuffer points = getRandomPoints(random);
+		for (int bucketSize : new int[] { 1, 7, ScreenPointIndex.DEFAULT_BUCKET_SIZE, 64 }) {
+			ScreenPointIndex index = new ScreenPointIndex(bucketSize);
+			index.build(points, POINT_COUNT, modelviewProjection, VIEWPORT, 1);
+			for (int query = 0; query < 200; query++) {
+				List<Rectangle> screenRects = new ArrayList<Rectangle>();
+				for (int rectCount = 1 + random.nextInt(3); rectCount > 0; rectCount--) {
+					screenRects.add(new Rectangle(random.nextInt(900) - 50, random.nextInt(700) - 50, random.nextInt(40), random.nextInt(40)));
+				}
+				int[] candidates = index.query(screenRects);
+				assertAscendingAndUnique(candidates);
+				for (int pointIndex = 0; pointIndex < POINT_COUNT; pointIndex++) {
+					if (isInAny(points, pointIndex, modelviewProjection, screenRects)) {
+						assertTrue("bucket size " + bucketSize + ": point " + pointIndex + " missing", Arrays.binarySearch(candidates, pointIndex) >= 0);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void overlappingRectanglesReturnEachPointOnce() {
+		Random random = new Random(5);
+		Matrix modelviewProjection = getModelviewProjection();
+		FloatBuffer points = getRandomPoints(random);
+		ScreenPointIndex index = new ScreenPointIndex();
+		index.build(points, POINT_COUNT, modelviewProjection, VIEWPORT, 1);
+		Rectangle rect = new Rectangle(380, 280, 40, 40);
+		int[] single = index.query(Collections.singletonList(rect));
+		int[] repeated = index.query(Arrays.asList(rect, new Rectangle(rect), new Rectangle(390, 290, 10, 10)));
+		assertAscendingAndUnique(repeated);
+		assertTrue(Arrays.equals(single, repeated));
+	}
+
+	@Test
+	public void pointsBehindTheEyeAreNotIndexed() {
+		Matrix modelviewProjection = getModelviewProjection();
+		FloatBuffer points = FloatBuffer.wrap(new float[] { 0, 0, -100, 0, 0, 100 });
+		ScreenPointIndex index = new ScreenPointIndex();
+		index.build(points, 2, modelviewProjection, VIEWPORT, 1);
+		int[] candidates = index.query(Collections.singletonList(new Rectangle(VIEWPORT)));
+		assertEquals(1, candidates.length);
+		assertEquals(0, candidates[0]);
+	}
+
+	@Test
+	public void indexIsCurrentForItsViewAndVersion() {
+		Matrix modelviewProjection = getModelviewProjection();
+		ScreenPointIndex index = new ScreenPointIndex();
+		assertFalse(index.isCurrent(modelviewProjection, VIEWPORT, 1));
+		index.build(FloatBuffer.allocate(0), 0, modelviewProjection, VIEWPORT, 1);
+		assertTrue(index.isCurrent(modelviewProjection, VIEWPORT, 1));
+		assertFalse(index.isCurrent(modelviewProjection, VIEWPORT, 2));
+		assertFalse(index.isCurrent(modelviewProjection, new Rectangle(0, 0, 640, 480), 1));
+		assertFalse(index.isCurrent(Matrix.IDENTITY, VIEWPORT, 1));
+	}
+
+	// A perspective view from the origin down the negative z axis
+	private static Matrix getModelviewProjection() {
+		return Matrix.fromPerspective(Angle.fromDegrees(45), VIEWPORT.width, VIEWPORT.height, 1, 1000);
+	}
+
+	// Points in and around the view volume, some behind the eye
+	private static FloatBuffer getRandomPoints(Random random) {
+		FloatBuffer points = FloatBuffer.allocate(3 * POINT_COUNT);
+		for (int index = 0; index < POINT_COUNT; index++) {
+			points.put((float) (random.nextDouble() * 120 - 60));
+			points.put((float) (random.nextDouble() * 90 - 45));
+			points.put((float) (-random.nextDouble() * 110 + 10));
+		}
+		points.flip();
+		return points;
+	}
+
+	// Projects a point as OpenGL does and tests it against the viewport and
+	// the rectangles
+	private static boolean isInAny(FloatBuffer points, int index, Matrix m, List<Rectangle> screenRects) {
+		double x = points.get(3 * index);
+		double y = points.get(3 * index + 1);
+		double z = points.get(3 * index + 2);
+		double w = m.m41 * x + m.m42 * y + m.m43 * z + m.m44;
+		if (w <= 0) {
+			return false;
+		}
+		double screenX = VIEWPORT.x + (1 + (m.m11 * x + m.m12 * y + m.m13 * z + m.m14) / w) * VIEWPORT.width / 2;
+		double screenY = VIEWPORT.y + (1 + (m.m21 * x + m.m22 * y + m.m23 * z + m.m24) / w) * VIEWPORT.height / 2;
+		if (screenX < VIEWPORT.x || screenX > VIEWPORT.x + VIEWPORT.width || screenY < VIEWPORT.y || screenY > VIEWPORT.y + VIEWPORT.height) {
+			return false;
+		}
+		for (Rectangle rect : screenRects) {
+			if (screenX >= rect.x && screenX <= rect.x + rect.width && screenY >= rect.y && screenY <= rect.y + rect.height) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void assertAscendingAndUnique(int[] indices) {
+		for (int index = 1; index < indices.length; index++) {
+			assertTrue("not ascending and unique at " + index, indices[index - 1] < indices[index]);
+		}
+	}
+}
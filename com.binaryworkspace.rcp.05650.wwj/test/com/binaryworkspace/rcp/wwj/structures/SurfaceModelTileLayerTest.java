@@ -0,0 +1,101 @@
+package com.binaryworkspace.rcp.wwj.structures;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import gov.nasa.worldwind.geom.Sector;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+import org.junit.Test;
+
+import com.binaryworkspace.rcp.wwj.enums.SurfaceFrameType;
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameDelta;
+import com.binaryworkspace.rcp.wwj.models.SurfaceFrameKey;
+
+/**
+ * Checks which regenerated tiles of SurfaceModelTileLayer keep the image of
+ * the tile they replace: unchanged tiles keep it as is, tiles with few dirty
+ * blocks keep it with a delta queued, and tiles that changed nearly everywhere
+ * get a new image.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class SurfaceModelTileLayerTest {
+
+	private static final int TILE_SIZE = 128;
+
+	@Test
+	public void unchangedTileKeepsItsImage() {
+		SurfaceModelTileLayer.Tile previousTile = createTile(0, new int[TILE_SIZE * TILE_SIZE]);
+		SurfaceModelTileLayer.Tile tile = createTile(1, new int[TILE_SIZE * TILE_SIZE]);
+		SurfaceFrameDelta delta = SurfaceModelTileLayer.computeDelta(tile, previousTile);
+		assertTrue(delta.isEmpty());
+		SurfaceModelTileLayer.Tile reusedTile = SurfaceModelTileLayer.reuseImage(tile, previousTile, delta);
+		assertSame(previousTile.surfaceImage, reusedTile.surfaceImage);
+		assertSame(tile.levelKey, reusedTile.levelKey);
+		assertTrue(getTileImage(previousTile).pendingDeltaList.isEmpty());
+	}
+
+	@Test
+	public void tileWithFewDirtyBlocksQueuesADelta() {
+		int[] previousArgb = new int[TILE_SIZE * TILE_SIZE];
+		int[] argb = previousArgb.clone();
+		argb[40 * TILE_SIZE + 70] = 0xFFFFFFFF;
+		SurfaceModelTileLayer.Tile previousTile = createTile(0, previousArgb);
+		SurfaceModelTileLayer.Tile tile = createTile(1, argb);
+		SurfaceModelTileLayer.Tile reusedTile = SurfaceModelTileLayer.reuseImage(tile, previousTile, SurfaceModelTileLayer.computeDelta(tile, previousTile));
+		assertSame(previousTile.surfaceImage, reusedTile.surfaceImage);
+		assertSame(argb, reusedTile.argb);
+
+		// The queued delta turns the image into the cells of the tile
+		SurfaceModelTileLayer.TileImage tileImage = getTileImage(previousTile);
+		assertEquals(1, tileImage.pendingDeltaList.size());
+		SurfaceFrameDelta delta = tileImage.pendingDeltaList.get(0);
+		assertEquals(SurfaceFrameDelta.DEFAULT_BLOCK_SIZE * SurfaceFrameDelta.DEFAULT_BLOCK_SIZE, delta.getDirtyCellCount());
+		int[] data = ((DataBufferInt) tileImage.image.getRaster().getDataBuffer()).getData();
+		delta.applyTo(data);
+		assertArrayEquals(argb, data);
+	}
+
+	@Test
+	public void tileChangedNearlyEverywhereGetsANewImage() {
+		int[] argb = new int[TILE_SIZE * TILE_SIZE];
+		for (int index = 0; index < argb.length; index += 7) {
+			argb[index] = 0xFF000000 | index;
+		}
+		SurfaceModelTileLayer.Tile previousTile = createTile(0, new int[TILE_SIZE * TILE_SIZE]);
+		SurfaceModelTileLayer.Tile tile = createTile(1, argb);
+		SurfaceFrameDelta delta = SurfaceModelTileLayer.computeDelta(tile, previousTile);
+		assertNull(delta);
+		SurfaceModelTileLayer.Tile reusedTile = SurfaceModelTileLayer.reuseImage(tile, previousTile, delta);
+		assertSame(tile, reusedTile);
+		assertNotSame(previousTile.surfaceImage, reusedTile.surfaceImage);
+	}
+
+	@Test
+	public void firstTileGetsANewImage() {
+		SurfaceModelTileLayer.Tile tile = createTile(0, new int[TILE_SIZE * TILE_SIZE]);
+		assertNull(SurfaceModelTileLayer.computeDelta(tile, null));
+		assertSame(tile, SurfaceModelTileLayer.reuseImage(tile, null, null));
+	}
+
+	// A tile of the frame whose image holds the cells, as generated
+	private static SurfaceModelTileLayer.Tile createTile(int frame, int[] argb) {
+		BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+		int[] data = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+		System.arraycopy(argb, 0, data, 0, argb.length);
+		SurfaceFrameKey levelKey = new SurfaceFrameKey(SurfaceFrameType.IMAGE, TILE_SIZE, TILE_SIZE, 1.0f, 10, frame, 1.0f);
+		return new SurfaceModelTileLayer.Tile(levelKey, new SurfaceModelTileLayer.TileImage(image, Sector.fromDegrees(0, 1, 0, 1)), argb);
+	}
+
+	private static SurfaceModelTileLayer.TileImage getTileImage(SurfaceModelTileLayer.Tile tile) {
+		return (SurfaceModelTileLayer.TileImage) tile.surfaceImage;
+	}
+}
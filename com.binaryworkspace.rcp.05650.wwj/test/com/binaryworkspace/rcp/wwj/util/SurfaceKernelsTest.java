@@ -0,0 +1,141 @@
+package com.binaryworkspace.rcp.wwj.util;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.reflect.Constructor;
+
+import org.junit.Test;
+
+/**
+ * Checks that the SIMD kernels of the multi-release overlay, VectorSurfaceKernels,
+ * produce the same bits as the scalar SurfaceKernels.
+ * <p>
+ * The SIMD tests only run on JDK 17 or later, with the compiled overlay
+ * (META-INF/versions/17) on the class path and
+ * <code>--add-modules jdk.incubator.vector</code>; otherwise they are skipped.
+ *
+ * @author Chris Ludka
+ *
+ */
+public class SurfaceKernelsTest {
+
+	/**
+	 * Longest run checked, longer than two vectors of any vector size.
+	 */
+	private static final int MAX_COUNT = 67;
+
+	/**
+	 * Offset of the first element, so the kernels never start at index 0.
+	 */
+	private static final int OFFSET = 5;
+
+	@Test
+	public void vectorCombineMatchesScalarCombine() {
+		SurfaceKernels scalarKernels = SurfaceKernels.getScalarInstance();
+		SurfaceKernels vectorKernels = getVectorKernels();
+		double[] columnSines = getColumnSines();
+		for (double rowSine : new double[] { -1.0, -0.3, 0.0, 0.71, 1.0 }) {
+			for (int count = 0; count <= MAX_COUNT; count++) {
+				float[] expected = new float[OFFSET + MAX_COUNT];
+				float[] actual = new float[OFFSET + MAX_COUNT];
+				scalarKernels.combine(columnSines, OFFSET, rowSine, expected, OFFSET, count);
+				vectorKernels.combine(columnSines, OFFSET, rowSine, actual, OFFSET, count);
+				assertBitsEqual("rowSine " + rowSine + ", count " + count, expected, actual);
+			}
+		}
+	}
+
+	@Test
+	public void vectorShiftAndWrapMatchesScalarShiftAndWrap() {
+		SurfaceKernels scalarKernels = SurfaceKernels.getScalarInstance();
+		SurfaceKernels vectorKernels = getVectorKernels();
+		float[] rawValues = new float[OFFSET + MAX_COUNT];
+		scalarKernels.combine(getColumnSines(), OFFSET, 0.71, rawValues, OFFSET, MAX_COUNT);
+		rawValues[OFFSET] = 0.0f;
+		rawValues[OFFSET + 1] = 1.0f;
+		for (float shift : new float[] { 0.0f, 0.25f, 37 / 99.0f, 1.0f }) {
+			for (int count = 0; count <= MAX_COUNT; count++) {
+				float[] expected = new float[OFFSET + MAX_COUNT];
+				float[] actual = new float[OFFSET + MAX_COUNT];
+				scalarKernels.shiftAndWrap(rawValues, OFFSET, shift, expected, OFFSET, count);
+				vectorKernels.shiftAndWrap(rawValues, OFFSET, shift, actual, OFFSET, count);
+				assertBitsEqual("shift " + shift + ", count " + count, expected, actual);
+
+				// In place
+				float[] inPlace = rawValues.clone();
+				vectorKernels.shiftAndWrap(inPlace, OFFSET, shift, inPlace, OFFSET, count);
+				System.arraycopy(rawValues, OFFSET + count, expected, OFFSET + count, MAX_COUNT - count);
+				assertBitsEqual("in place, shift " + shift + ", count " + count, expected, inPlace);
+			}
+		}
+	}
+
+	@Test
+	public void vectorLookupMatchesScalarLookup() {
+		SurfaceKernels scalarKernels = SurfaceKernels.getScalarInstance();
+		SurfaceKernels vectorKernels = getVectorKernels();
+		float[] percentages = new float[OFFSET + MAX_COUNT];
+		for (int index = 0; index < percentages.length; index++) {
+			percentages[index] = index / (float) (percentages.length - 1) * 1.2f - 0.1f;
+		}
+		percentages[OFFSET] = Float.NaN;
+		percentages[OFFSET + 1] = -0.0f;
+		int[] table = new int[256];
+		for (int index = 0; index < table.length; index++) {
+			table[index] = 0xFF000000 | (index * 0x010307);
+		}
+		for (int count = 0; count <= MAX_COUNT; count++) {
+			int[] expected = new int[OFFSET + MAX_COUNT];
+			int[] actual = new int[OFFSET + MAX_COUNT];
+			scalarKernels.lookupArgb(percentages, OFFSET, table, table.length - 1, 0x80000000, expected, OFFSET, count);
+			vectorKernels.lookupArgb(percentages, OFFSET, table, table.length - 1, 0x80000000, actual, OFFSET, count);
+			assertArrayEquals("count " + count, expected, actual);
+		}
+	}
+
+	@Test
+	public void vectorKernelsMatchReferenceInputs() {
+		assertTrue(SurfaceKernels.matches(SurfaceKernels.getScalarInstance(), getVectorKernels()));
+	}
+
+	@Test
+	public void instanceMatchesScalarKernels() {
+		assertTrue(SurfaceKernels.matches(SurfaceKernels.getScalarInstance(), SurfaceKernels.getInstance()));
+	}
+
+	// Loads the SIMD kernels, skipping the test if the overlay is unavailable
+	private static SurfaceKernels getVectorKernels() {
+		SurfaceKernels vectorKernels = null;
+		try {
+			Class<?> vectorClass = Class.forName("com.binaryworkspace.rcp.wwj.util.VectorSurfaceKernels");
+			Constructor<?> constructor = vectorClass.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			vectorKernels = (SurfaceKernels) constructor.newInstance();
+		} catch (Throwable e) {
+			// Missing overlay, Java 8, or a runtime without jdk.incubator.vector
+		}
+		assumeTrue("Vector surface kernels unavailable", vectorKernels != null);
+		return vectorKernels;
+	}
+
+	// Column terms with both extremes of the sine
+	private static double[] getColumnSines() {
+		double[] columnSines = new double[OFFSET + MAX_COUNT];
+		for (int index = 0; index < columnSines.length; index++) {
+			columnSines[index] = Math.sin(index * 0.37);
+		}
+		columnSines[OFFSET] = 1.0;
+		columnSines[OFFSET + 1] = -1.0;
+		return columnSines;
+	}
+
+	private static void assertBitsEqual(String message, float[] expected, float[] actual) {
+		assertEquals(message, expected.length, actual.length);
+		for (int index = 0; index < expected.length; index++) {
+			assertEquals(message + ", index " + index, Float.floatToIntBits(expected[index]), Float.floatToIntBits(actual[index]));
+		}
+	}
+}